@@ -0,0 +1,65 @@
+package fp.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import fp.types.StageGenerator;
+
+/**
+ * Datasets used by the benchmarks.
+ *
+ * The size "bundled" is the .csv file of the project (path given by the system property
+ * stages.csv, data/stages_TDF.csv by default). Any other size is a number of stages: a file
+ * with that many rows is created in the temporary directory with a StageGenerator (seed
+ * given by the system property stages.seed, 42 by default), and reused by later runs.
+ * The name of the file includes the version of the generator, so a file created by an
+ * older generator is never reused.
+ *
+ * @author Guillermo R.N.
+ */
+public class Datasets {
+	public static final String BUNDLED = "bundled";
+	private static final long SEED = Long.getLong("stages.seed", 42L);
+
+	private Datasets() {
+	}
+
+	/**
+	 * Gets the .csv file of a dataset, creating it if needed.
+	 * @param size "bundled" or the number of stages of the dataset.
+	 * @return The path of the .csv file.
+	 */
+	public static Path csv(String size) {
+		Path bundled = Paths.get(System.getProperty("stages.csv", "data/stages_TDF.csv"));
+		Path result = bundled;
+
+		if (!BUNDLED.equals(size)) {
+			result = Paths.get(System.getProperty("java.io.tmpdir"),
+							"stages_v" + StageGenerator.VERSION + "_" + SEED + "_" + size + ".csv");
+			if (!Files.exists(result)) {
+				generate(result, Integer.parseInt(size));
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Creates a .csv file with synthetic stages.
+	 * @param target The file to create.
+	 * @param rows Number of rows (without the header) of the new file.
+	 */
+	private static void generate(Path target, int rows) {
+		Path partial = Paths.get(target + ".part");
+		new StageGenerator(SEED).writeCsv(partial.toString(), rows);
+
+		try {
+			Files.move(partial, target);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
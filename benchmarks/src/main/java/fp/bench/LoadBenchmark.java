@@ -0,0 +1,80 @@
+package fp.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fp.types.Stage;
+import fp.types.StageFactory;
+import fp.types.Stages;
+
+/**
+ * Measures the loaders of StageFactory.
+ * Larger datasets can be selected with -p size=10000000 (a heap of several GB is needed).
+ * @author Guillermo R.N.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class LoadBenchmark {
+	@Param({Datasets.BUNDLED, "100000", "1000000"})
+	public String size;
+
+	private String csv;
+	private String snapshot;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		Path path = Datasets.csv(size);
+		Path snapshotPath = Files.createTempFile("stages", ".snapshot");
+		snapshotPath.toFile().deleteOnExit();
+
+		csv = path.toString();
+		snapshot = snapshotPath.toString();
+		StageFactory.readStages(csv).writeSnapshot(snapshot);
+	}
+
+	@Benchmark
+	public Stages readStages() {
+		return StageFactory.readStages(csv);
+	}
+
+	@Benchmark
+	public Stages readStagesToStream() {
+		return StageFactory.readStagesToStream(csv);
+	}
+
+	@Benchmark
+	public Stages readStagesParallel() {
+		return StageFactory.readStagesParallel(csv);
+	}
+
+	@Benchmark
+	public Stages readSnapshot() {
+		return StageFactory.readSnapshot(snapshot);
+	}
+
+	@Benchmark
+	public double streamStages() {
+		try (Stream<Stage> stages = StageFactory.streamStages(csv)) {
+			return stages.mapToDouble(Stage::distance).sum();
+		}
+	}
+}
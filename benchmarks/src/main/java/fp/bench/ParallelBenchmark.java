@@ -0,0 +1,61 @@
+package fp.bench;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fp.common.Rider;
+import fp.types.Stage;
+import fp.types.StageFactory;
+import fp.types.Stages;
+
+/**
+ * Compares the stream aggregations of Stages in sequential and parallel mode.
+ * A parallelism of 0 stands for the number of available processors.
+ * @author Guillermo R.N.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ParallelBenchmark {
+	@Param({"1000000"})
+	public String size;
+
+	@Param({"1", "0"})
+	public int parallelism;
+
+	private Stages stages;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		stages = StageFactory.readStages(Datasets.csv(size).toString());
+		stages.setParallelism(parallelism == 0 ? Runtime.getRuntime().availableProcessors() : parallelism);
+	}
+
+	@Benchmark
+	public Map<Rider, Long> stagesByWinnerStream() {
+		return stages.stagesByWinnerStream();
+	}
+
+	@Benchmark
+	public SortedMap<String, List<Stage>> longestStagesByWinner() {
+		return stages.longestStagesByWinner(3);
+	}
+}
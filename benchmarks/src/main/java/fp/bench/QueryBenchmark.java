@@ -0,0 +1,145 @@
+package fp.bench;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fp.common.Rider;
+import fp.common.Season;
+import fp.types.Stage;
+import fp.types.StageFactory;
+import fp.types.StageStatistics;
+import fp.types.StageType;
+import fp.types.Stages;
+
+/**
+ * Measures every query of Stages, in both its loop and its stream variant.
+ * The heap allocated by every query is reported when run with -prof gc.
+ * Larger datasets can be selected with -p size=10000000 (a heap of several GB is needed).
+ * @author Guillermo R.N.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class QueryBenchmark {
+	private static final LocalDate DATE = LocalDate.of(2005, 1, 1);
+
+	@Param({Datasets.BUNDLED, "100000", "1000000"})
+	public String size;
+
+	private Stages stages;
+	private String rider;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		stages = StageFactory.readStages(Datasets.csv(size).toString());
+		// The rider queries look for the most frequent winner, who is in every dataset
+		rider = stages.riderWithMostWins().name();
+	}
+
+	@Benchmark
+	public Boolean stageWithRiderInPodium() {
+		return stages.stageWithRiderInPodium(rider);
+	}
+
+	@Benchmark
+	public Boolean stageWithRiderInPodiumStream() {
+		return stages.stageWithRiderInPodiumStream(rider);
+	}
+
+	@Benchmark
+	public Float averageStageDistance() {
+		return stages.averageStageDistance();
+	}
+
+	@Benchmark
+	public Double averageStageDistanceStream() {
+		return stages.averageStageDistanceStream();
+	}
+
+	@Benchmark
+	public List<Stage> stagesBefore() {
+		return stages.stagesBefore(DATE);
+	}
+
+	@Benchmark
+	public List<Stage> stagesBeforeStream() {
+		return stages.stagesBeforeStream(DATE);
+	}
+
+	@Benchmark
+	public Map<Integer, List<Stage>> stagesByNumber() {
+		return stages.stagesByNumber();
+	}
+
+	@Benchmark
+	public Map<Rider, Integer> stagesByWinner() {
+		return stages.stagesByWinner();
+	}
+
+	@Benchmark
+	public Map<Rider, Long> stagesByWinnerStream() {
+		return stages.stagesByWinnerStream();
+	}
+
+	@Benchmark
+	public Stage longestStageWon() {
+		return stages.longestStageWon(rider);
+	}
+
+	@Benchmark
+	public List<Stage> stagesByDistanceOfType() {
+		return stages.stagesByDistanceOfType(StageType.MOUNTAIN);
+	}
+
+	@Benchmark
+	public Map<StageType, Set<String>> winnersByType() {
+		return stages.winnersByType();
+	}
+
+	@Benchmark
+	public Map<Rider, Stage> firstStageByRider() {
+		return stages.firstStageByRider();
+	}
+
+	@Benchmark
+	public SortedMap<String, List<Stage>> longestStagesByWinner() {
+		return stages.longestStagesByWinner(3);
+	}
+
+	@Benchmark
+	public Rider riderWithMostWins() {
+		return stages.riderWithMostWins();
+	}
+
+	@Benchmark
+	public SortedMap<Season, StageStatistics> statisticsBySeason() {
+		return stages.statisticsBySeason();
+	}
+
+	@Benchmark
+	public Map<Season, Long> stagesBySeasonStream() {
+		return stages.getStages().stream()
+				.collect(Collectors.groupingBy(Stage::season, Collectors.counting()));
+	}
+}
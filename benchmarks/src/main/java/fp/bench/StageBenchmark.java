@@ -0,0 +1,76 @@
+package fp.bench;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fp.types.Stage;
+import fp.types.StageFactory;
+import fp.utils.Checkers;
+
+/**
+ * Compares the checks of the Stage constructor with the checks it used to make, which
+ * read the clock for every stage. Both only check the constraints, without creating
+ * a stage; the cost of the whole constructor is measured too, for reference.
+ * Every invocation checks the next stage of the dataset.
+ * @author Guillermo R.N.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class StageBenchmark {
+	@Param({Datasets.BUNDLED, "100000", "1000000"})
+	public String size;
+
+	private Stage[] stages;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		stages = StageFactory.readStages(Datasets.csv(size).toString()).getStages().toArray(new Stage[0]);
+		next = 0;
+	}
+
+	@Benchmark
+	public void formerChecks() {
+		Stage s = nextStage();
+		Checkers.check("Stage number must be greater than 0.", s.stageNo() > 0);
+		Checkers.check("Distance must be greater than or equal to 0.0f.", s.distance() >= 0.0f);
+		Checkers.check("Date must be before current date.", s.date().isBefore(LocalDate.now()));
+		Checkers.check("Podium must contain a maximum of three elements.", s.podium().size() <= 3);
+	}
+
+	@Benchmark
+	public void checks() {
+		Stage s = nextStage();
+		Stage.check(s.stageNo(), s.date(), s.distance(), s.podium());
+	}
+
+	@Benchmark
+	public Stage constructor() {
+		Stage s = nextStage();
+		return new Stage(s.stageNo(), s.date(), s.distance(), s.origin(),
+						s.destination(), s.type(), s.podium(), s.winner());
+	}
+
+	private Stage nextStage() {
+		Stage result = stages[next];
+		next = next + 1 == stages.length ? 0 : next + 1;
+		return result;
+	}
+}
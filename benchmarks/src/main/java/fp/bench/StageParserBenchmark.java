@@ -0,0 +1,106 @@
+package fp.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fp.common.Rider;
+import fp.common.RiderCountry;
+import fp.types.Stage;
+import fp.types.StageParser;
+import fp.types.StageType;
+import fp.utils.Checkers;
+
+/**
+ * Compares the throughput (rows/sec) of StageParser with the former String.split based
+ * parsing of .csv lines. Every invocation parses the next line of the dataset, and the
+ * setup checks that both parsers produce the same stages for every line.
+ * @author Guillermo R.N.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class StageParserBenchmark {
+	@Param({Datasets.BUNDLED, "100000", "1000000"})
+	public String size;
+
+	private String[] lines;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		List<String> all = Files.readAllLines(Datasets.csv(size));
+		lines = all.subList(1, all.size()).toArray(new String[0]);
+		next = 0;
+
+		for (String line: lines) {
+			Checkers.check("Both parsers must produce equal stages: " + line,
+							splitParseLine(line).equals(StageParser.parseLine(line)));
+		}
+	}
+
+	@Benchmark
+	public Stage split() {
+		return splitParseLine(nextLine());
+	}
+
+	@Benchmark
+	public Stage stageParser() {
+		return StageParser.parseLine(nextLine());
+	}
+
+	private String nextLine() {
+		String result = lines[next];
+		next = next + 1 == lines.length ? 0 : next + 1;
+		return result;
+	}
+
+	/**
+	 * Parse a .csv line the way StageFactory used to (reference implementation).
+	 * @param line The line to parse.
+	 * @return A Stage object resulting from parsing the line.
+	 */
+	private static Stage splitParseLine(String line) {
+		String[] chunks = line.split(",");
+		Checkers.check("Number of cells per line must be equal to 10.",
+					chunks.length == 10);
+
+		Integer stageNo = Integer.valueOf(chunks[0].trim());
+		LocalDate date = LocalDate.parse(chunks[1].trim(),
+						DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+		Float distance = Float.valueOf(chunks[2].trim());
+		String origin = chunks[3].trim();
+		String destination = chunks[4].trim();
+		StageType type = StageType.valueOf(chunks[5].trim());
+		Rider winner = new Rider(chunks[6].trim(), chunks[7].trim(),
+								RiderCountry.valueOf(chunks[8].trim()));
+
+		List<String> podium = new ArrayList<>();
+		for (String s: chunks[9].trim().split("; ")) {
+			podium.add(s);
+		}
+
+		return new Stage(stageNo, date, distance, origin,
+						destination, type, podium, winner);
+	}
+}
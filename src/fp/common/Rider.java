@@ -35,8 +35,17 @@ public record Rider(String name, String team, RiderCountry country) {
 		return country;
 	}
 
+	/**
+	 * Same value as Objects.hash over the properties, without creating an array.
+	 * The hash codes of the strings are cached by the strings.
+	 */
 	public int hashCode() {
-		return Objects.hash(country, name, team);
+		int result = 31 + Objects.hashCode(country);
+		
+		result = 31 * result + Objects.hashCode(name);
+		result = 31 * result + Objects.hashCode(team);
+		
+		return result;
 	}
 
 	public boolean equals(Object obj) {
@@ -0,0 +1,62 @@
+package fp.common;
+
+import java.time.LocalDate;
+
+/**
+ * Record to hold a sports season, e.g. 2016-2017.
+ * @author Guillermo R.N.
+ */
+
+/*
+ * Properties:
+ * -startYear (int)
+ * -endYear (int, derived)
+ */
+
+public record Season(int startYear) implements Comparable<Season> {
+	private static final int FIRST_CACHED = 1900;
+	private static final Season[] CACHE = new Season[256];
+
+	static {
+		for (int i = 0; i < CACHE.length; i++) {
+			CACHE[i] = new Season(FIRST_CACHED + i);
+		}
+	}
+
+	/**
+	 * Gets a season. Seasons starting from 1900 to 2155 are shared, so getting them
+	 * does not create any object.
+	 * @param startYear The year in which the season starts.
+	 * @return The season.
+	 */
+	public static Season of(int startYear) {
+		int i = startYear - FIRST_CACHED;
+		return i >= 0 && i < CACHE.length ? CACHE[i] : new Season(startYear);
+	}
+
+	/**
+	 * Gets the season to which a date in the summer of a year belongs (the season
+	 * that ends that year).
+	 * @param date The date.
+	 * @return The season.
+	 */
+	public static Season of(LocalDate date) {
+		return of(date.getYear() - 1);
+	}
+
+	/**
+	 * Derived property.
+	 * @return The year in which the season ends.
+	 */
+	public int endYear() {
+		return startYear + 1;
+	}
+
+	public int compareTo(Season other) {
+		return Integer.compare(startYear, other.startYear);
+	}
+
+	public String toString() {
+		return startYear + "-" + endYear();
+	}
+}
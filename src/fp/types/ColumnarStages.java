@@ -0,0 +1,653 @@
+package fp.types;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import fp.common.Rider;
+import fp.utils.Checkers;
+import fp.utils.StringDictionary;
+
+/**
+ * Column-oriented container for the Stage datatype. Offers the same queries as Stages,
+ * but every property is kept in a primitive array (one position per stage) and names
+ * are replaced by dictionary identifiers. Stage objects are only created for the
+ * stages that a query returns.
+ * @author Guillermo R.N.
+ */
+
+/*
+ * Columns:
+ * -stageNos (int[])
+ * -epochDays (int[])
+ * -distances (float[])
+ * -types (byte[], StageType ordinals)
+ * -origins, destinations (int[], ids in the name dictionary)
+ * -winners (int[], ids in the rider table)
+ * -podiums (int[], three ids in the name dictionary per stage, -1 if absent)
+ */
+public class ColumnarStages {
+	private static final int PODIUM_SIZE = 3;
+	private static final StageType[] STAGE_TYPES = StageType.values();
+
+	private int size;
+	private int[] stageNos;
+	private int[] epochDays;
+	private float[] distances;
+	private byte[] types;
+	private int[] origins;
+	private int[] destinations;
+	private int[] winners;
+	private int[] podiums;
+
+	private StringDictionary names;
+	private List<Rider> riders;
+	private Map<Rider, Integer> riderIds;
+
+	/**
+	 * First constructor.
+	 */
+	public ColumnarStages() {
+		this.size = 0;
+		this.stageNos = new int[16];
+		this.epochDays = new int[16];
+		this.distances = new float[16];
+		this.types = new byte[16];
+		this.origins = new int[16];
+		this.destinations = new int[16];
+		this.winners = new int[16];
+		this.podiums = new int[16 * PODIUM_SIZE];
+		this.names = new StringDictionary();
+		this.riders = new ArrayList<>();
+		this.riderIds = new HashMap<>();
+	}
+
+	/**
+	 * Second constructor.
+	 * @param stages Collection of stages that the container will bear.
+	 */
+	public ColumnarStages(Collection<Stage> stages) {
+		this();
+		addStages(stages);
+	}
+
+	/**
+	 * Third constructor.
+	 * @param stages Container whose stages this container will bear.
+	 */
+	public ColumnarStages(Stages stages) {
+		this(stages.getStages());
+	}
+
+	/**
+	 * Gets the number of stages (derived property).
+	 * @return Number of stages in the container.
+	 */
+	public Integer getNumberStages() {
+		return size;
+	}
+
+	/**
+	 * Materializes a stage of the container.
+	 * @param index Position of the stage.
+	 * @return The stage in that position.
+	 */
+	public Stage getStage(int index) {
+		Checkers.check("Index must be between 0 and the number of stages.", index >= 0 && index < size);
+
+		List<String> podium = new ArrayList<>(PODIUM_SIZE);
+		for (int j = index * PODIUM_SIZE; j < (index + 1) * PODIUM_SIZE && podiums[j] >= 0; j++) {
+			podium.add(names.get(podiums[j]));
+		}
+
+		return new Stage(stageNos[index], LocalDate.ofEpochDay(epochDays[index]), distances[index],
+						names.get(origins[index]), names.get(destinations[index]), STAGE_TYPES[types[index]],
+						podium, riders.get(winners[index]));
+	}
+
+	/**
+	 * Materializes all the stages of the container.
+	 * @return A list with the stages, in insertion order.
+	 */
+	public List<Stage> getStages() {
+		List<Stage> result = new ArrayList<>(size);
+
+		for (int i = 0; i < size; i++) {
+			result.add(getStage(i));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Materializes the container as a Stages object.
+	 * @return A Stages object with the same stages, in the same order.
+	 */
+	public Stages toStages() {
+		return new Stages(getStages());
+	}
+
+	/**
+	 * Adds a stage to the container.
+	 * @param stage The stage to add.
+	 */
+	public void addStage(Stage stage) {
+		if (size == stageNos.length) {
+			grow();
+		}
+
+		stageNos[size] = stage.stageNo();
+		epochDays[size] = (int) stage.date().toEpochDay();
+		distances[size] = stage.distance();
+		types[size] = (byte) stage.type().ordinal();
+		origins[size] = names.idOf(stage.origin());
+		destinations[size] = names.idOf(stage.destination());
+		winners[size] = riderId(stage.winner());
+
+		List<String> podium = stage.podium();
+		for (int j = 0; j < PODIUM_SIZE; j++) {
+			podiums[size * PODIUM_SIZE + j] = j < podium.size() ? names.idOf(podium.get(j)) : -1;
+		}
+
+		size++;
+	}
+
+	/**
+	 * Adds a collection of stages to the container.
+	 * @param stages Collection of stages to add.
+	 */
+	public void addStages(Collection<Stage> stages) {
+		for (Stage s: stages) {
+			addStage(s);
+		}
+	}
+
+	/**
+	 * Deletes a stage from the container.
+	 * @param stage The stage to delete.
+	 */
+	public void deleteStage(Stage stage) {
+		int index = -1;
+
+		for (int i = 0; i < size && index < 0; i++) {
+			if (stageNos[i] == stage.stageNo() && epochDays[i] == stage.date().toEpochDay()
+					&& getStage(i).equals(stage)) {
+				index = i;
+			}
+		}
+
+		if (index >= 0) {
+			int moved = size - index - 1;
+			System.arraycopy(stageNos, index + 1, stageNos, index, moved);
+			System.arraycopy(epochDays, index + 1, epochDays, index, moved);
+			System.arraycopy(distances, index + 1, distances, index, moved);
+			System.arraycopy(types, index + 1, types, index, moved);
+			System.arraycopy(origins, index + 1, origins, index, moved);
+			System.arraycopy(destinations, index + 1, destinations, index, moved);
+			System.arraycopy(winners, index + 1, winners, index, moved);
+			System.arraycopy(podiums, (index + 1) * PODIUM_SIZE, podiums, index * PODIUM_SIZE,
+							moved * PODIUM_SIZE);
+			size--;
+		}
+	}
+
+	/**
+	 * Checks if there is a stage whose podium contains a certain rider ("Exists" criterion).
+	 * @param riderName The rider for whose existance to check.
+	 * @return true/false depending on whether there is a stage with a rider in the podium or not.
+	 */
+	public Boolean stageWithRiderInPodium(String riderName) {
+		int id = names.find(riderName);
+		Boolean result = false;
+
+		for (int j = 0; id >= 0 && j < size * PODIUM_SIZE; j++) {
+			if (podiums[j] == id) {
+				result = true;
+				break;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Get the average stage distance ("Average" criterion).
+	 * @return The average of the distances.
+	 */
+	public Float averageStageDistance() {
+		Checkers.check("Stage number must be greater than 0.", size > 0);
+		double result = 0.0;
+
+		for (int i = 0; i < size; i++) {
+			result += distances[i];
+		}
+
+		return (float) (result / size);
+	}
+
+	/**
+	 * Gets a list with all stages before a certain date (selection with filtering).
+	 * @param date The date used for the filtering.
+	 * @return A list containing all the stages before that date.
+	 */
+	public List<Stage> stagesBefore(LocalDate date) {
+		long epochDay = date.toEpochDay();
+		List<Stage> result = new ArrayList<>();
+
+		for (int i = 0; i < size; i++) {
+			if (epochDays[i] < epochDay) {
+				result.add(getStage(i));
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets a map with all stages with the same number.
+	 * @return The created map.
+	 */
+	public Map<Integer, List<Stage>> stagesByNumber() {
+		Map<Integer, List<Stage>> result = new HashMap<>();
+
+		for (int i = 0; i < size; i++) {
+			result.computeIfAbsent(stageNos[i], k -> new ArrayList<>()).add(getStage(i));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets a map with the number of stages won by every stage winner.
+	 * @return The created map.
+	 */
+	public Map<Rider, Integer> stagesByWinner() {
+		int[] wins = winCounts();
+		Map<Rider, Integer> result = new HashMap<>();
+
+		for (int id = 0; id < wins.length; id++) {
+			if (wins[id] > 0) {
+				result.put(riders.get(id), wins[id]);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets the longest stage a rider has ever won (maximum with filtering).
+	 * @param riderName The name of the rider used for the filtering.
+	 * @return The longest stage with said rider as its winner.
+	 */
+	public Stage longestStageWon(String riderName) {
+		int nameId = names.find(riderName);
+		int[] riderNames = riderNameIds();
+		int longest = -1;
+
+		for (int i = 0; nameId >= 0 && i < size; i++) {
+			if (riderNames[winners[i]] == nameId && (longest < 0 || distances[i] > distances[longest])) {
+				longest = i;
+			}
+		}
+
+		return longest < 0 ? null : getStage(longest);
+	}
+
+	/**
+	 * Gets the number of wins, the number of podiums and the longest stage won of several
+	 * riders with a single pass over the winner and podium columns.
+	 * @param riderNames Names of the riders.
+	 * @return A map associating every name to the summary of the rider.
+	 */
+	public Map<String, RiderSummary> riderSummaries(Collection<String> riderNames) {
+		int[] nameOfRider = riderNameIds();
+		int[] wins = new int[names.size()];
+		int[] podiumCount = new int[names.size()];
+		int[] longest = new int[names.size()];
+		Arrays.fill(longest, -1);
+
+		for (int i = 0; i < size; i++) {
+			int winner = nameOfRider[winners[i]];
+			wins[winner]++;
+			if (longest[winner] < 0 || distances[i] > distances[longest[winner]]) {
+				longest[winner] = i;
+			}
+			for (int j = i * PODIUM_SIZE; j < (i + 1) * PODIUM_SIZE && podiums[j] >= 0; j++) {
+				// A rider listed twice in the same podium is only counted once
+				boolean repeated = false;
+				for (int k = i * PODIUM_SIZE; k < j; k++) {
+					repeated |= podiums[k] == podiums[j];
+				}
+				if (!repeated) {
+					podiumCount[podiums[j]]++;
+				}
+			}
+		}
+
+		Map<String, RiderSummary> result = new HashMap<>();
+		for (String name: riderNames) {
+			int id = names.find(name);
+			result.put(name, id < 0 ? new RiderSummary(name, 0, 0, null)
+					: new RiderSummary(name, wins[id], podiumCount[id], longest[id] < 0 ? null : getStage(longest[id])));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Counts the stages that took place before several dates with a single pass over the
+	 * date column.
+	 * @param dates The dates used for the filtering.
+	 * @return A map associating every date to the number of stages before it.
+	 */
+	public Map<LocalDate, Integer> countStagesBefore(Collection<LocalDate> dates) {
+		long[] sorted = dates.stream().mapToLong(LocalDate::toEpochDay).sorted().distinct().toArray();
+		int[] counts = new int[sorted.length + 1];
+
+		for (int i = 0; i < size; i++) {
+			// Position of the first date after the stage: the stage is before it and all the later ones
+			int position = Arrays.binarySearch(sorted, epochDays[i] + 1L);
+			counts[position < 0 ? -position - 1 : position]++;
+		}
+		for (int k = 1; k < counts.length; k++) {
+			counts[k] += counts[k - 1];
+		}
+
+		Map<LocalDate, Integer> result = new HashMap<>();
+		for (int k = 0; k < sorted.length; k++) {
+			result.put(LocalDate.ofEpochDay(sorted[k]), counts[k]);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets a list of stages with the same type, sorted by distance
+	 * (selection with filtering and sorting).
+	 *
+	 * @param type The stage type used for the filtering.
+	 * @return The list of stages of that type, sorted by distance.
+	 */
+	public List<Stage> stagesByDistanceOfType(StageType type) {
+		return stagesByDistanceOfType(type, 0, size);
+	}
+
+	/**
+	 * Gets a page of the stages with the same type, sorted by distance. Only the first
+	 * offset + limit stages are sorted.
+	 * @param type The stage type used for the filtering.
+	 * @param offset Number of stages to skip.
+	 * @param limit Maximum number of stages to return.
+	 * @return The stages of that type from position offset on, sorted by distance.
+	 */
+	public List<Stage> stagesByDistanceOfType(StageType type, Integer offset, Integer limit) {
+		Checkers.check("Offset must not be negative.", offset >= 0);
+		Checkers.check("Limit must not be negative.", limit >= 0);
+		long[] keys = new long[size];
+		int count = 0;
+
+		for (int i = 0; i < size; i++) {
+			if (types[i] == type.ordinal()) {
+				keys[count++] = ((long) distanceKey(distances[i]) << 32) | i;
+			}
+		}
+
+		int end = selectSmallest(keys, 0, count, (int) Math.min((long) offset + limit, count));
+		List<Stage> result = new ArrayList<>(Math.max(0, end - offset));
+		for (int k = offset; k < end; k++) {
+			result.add(getStage((int) keys[k]));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets a map associating each stage type to a set of all the names of the riders who won
+	 * stages of that type.
+	 * @return The created map.
+	 */
+	public Map<StageType, Set<String>> winnersByType() {
+		Map<StageType, Set<String>> result = new HashMap<>();
+
+		for (int i = 0; i < size; i++) {
+			result.computeIfAbsent(STAGE_TYPES[types[i]], k -> new HashSet<>())
+					.add(riders.get(winners[i]).name());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets a map associating every stage winner to the earliest stage they won.
+	 * @return The created map.
+	 */
+	public Map<Rider, Stage> firstStageByRider() {
+		int[] first = new int[riders.size()];
+		Arrays.fill(first, -1);
+
+		for (int i = 0; i < size; i++) {
+			int id = winners[i];
+			if (first[id] < 0 || epochDays[i] < epochDays[first[id]]) {
+				first[id] = i;
+			}
+		}
+
+		Map<Rider, Stage> result = new HashMap<>();
+		for (int id = 0; id < first.length; id++) {
+			if (first[id] >= 0) {
+				result.put(riders.get(id), getStage(first[id]));
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets a SortedMap with the n longest stages every stage winner has won.
+	 * @param n Number of stages to associate to each winner.
+	 * @return The created SortedMap.
+	 */
+	public SortedMap<String, List<Stage>> longestStagesByWinner(Integer n) {
+		int[] riderNames = riderNameIds();
+		int[] offsets = new int[names.size() + 1];
+
+		for (int i = 0; i < size; i++) {
+			offsets[riderNames[winners[i]] + 1]++;
+		}
+		for (int id = 0; id < names.size(); id++) {
+			offsets[id + 1] += offsets[id];
+		}
+
+		// Keys sort by descending distance and then by position, grouped by winner name
+		long[] keys = new long[size];
+		int[] next = Arrays.copyOf(offsets, names.size());
+		for (int i = 0; i < size; i++) {
+			keys[next[riderNames[winners[i]]]++] =
+					((long) (Integer.MAX_VALUE - distanceKey(distances[i])) << 32) | i;
+		}
+
+		SortedMap<String, List<Stage>> result = new TreeMap<>();
+		for (int id = 0; id < names.size(); id++) {
+			if (offsets[id + 1] > offsets[id]) {
+				int end = offsets[id] + selectSmallest(keys, offsets[id], offsets[id + 1], n);
+
+				List<Stage> longest = new ArrayList<>();
+				for (int k = offsets[id]; k < end; k++) {
+					longest.add(getStage((int) keys[k]));
+				}
+				result.put(names.get(id), longest);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets the stage winner with the greatest number of wins.
+	 * @return The rider with the largest number of wins, or null if the container is empty.
+	 */
+	public Rider riderWithMostWins() {
+		int[] wins = winCounts();
+		int best = -1;
+
+		for (int id = 0; id < wins.length; id++) {
+			if (wins[id] > 0 && (best < 0 || wins[id] > wins[best])) {
+				best = id;
+			}
+		}
+
+		return best < 0 ? null : riders.get(best);
+	}
+
+	/**
+	 * Counts the wins of every rider in the rider table.
+	 * @return An array with the number of wins of every rider, indexed by rider id.
+	 */
+	private int[] winCounts() {
+		int[] result = new int[riders.size()];
+
+		for (int i = 0; i < size; i++) {
+			result[winners[i]]++;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets the name dictionary id of every rider in the rider table.
+	 * @return An array with the id of the name of every rider, indexed by rider id.
+	 */
+	private int[] riderNameIds() {
+		int[] result = new int[riders.size()];
+
+		for (int id = 0; id < result.length; id++) {
+			result[id] = names.find(riders.get(id).name());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets the id of a rider in the rider table, adding it if it was not there.
+	 * @param rider The rider whose id to get.
+	 * @return The id of the rider.
+	 */
+	private int riderId(Rider rider) {
+		Integer result = riderIds.get(rider);
+
+		if (result == null) {
+			result = riders.size();
+			rider = new Rider(names.intern(rider.name()), names.intern(rider.team()), rider.country());
+			riders.add(rider);
+			riderIds.put(rider, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Moves the n smallest keys of a range to its beginning, sorted. The rest of the
+	 * range is left unordered. Uses a max-heap of n keys, so it takes O(m log n) time
+	 * for a range of m keys.
+	 * @param keys The keys.
+	 * @param from Start of the range (inclusive).
+	 * @param to End of the range (exclusive).
+	 * @param n Number of keys to select.
+	 * @return The number of selected keys, min(n, to - from).
+	 */
+	private static int selectSmallest(long[] keys, int from, int to, int n) {
+		int result = Math.min(n, to - from);
+
+		if (result < to - from) {
+			for (int i = result / 2 - 1; i >= 0; i--) {
+				siftDown(keys, from, result, i);
+			}
+			for (int i = from + result; i < to && result > 0; i++) {
+				if (keys[i] < keys[from]) {
+					long discarded = keys[from];
+					keys[from] = keys[i];
+					keys[i] = discarded;
+					siftDown(keys, from, result, 0);
+				}
+			}
+		}
+		Arrays.sort(keys, from, from + result);
+
+		return result;
+	}
+
+	/**
+	 * Restores the max-heap property of keys[from, from + size) below a node.
+	 */
+	private static void siftDown(long[] keys, int from, int size, int node) {
+		long key = keys[from + node];
+		int child = 2 * node + 1;
+
+		while (child < size) {
+			if (child + 1 < size && keys[from + child + 1] > keys[from + child]) {
+				child++;
+			}
+			if (keys[from + child] > key) {
+				keys[from + node] = keys[from + child];
+				node = child;
+				child = 2 * node + 1;
+			} else {
+				child = size;
+			}
+		}
+		keys[from + node] = key;
+	}
+
+	/**
+	 * Maps a distance to an int whose order is the same as that of the distances
+	 * (distances are never negative, so their IEEE bits already sort correctly).
+	 * @param distance The distance to map.
+	 * @return The sort key of the distance.
+	 */
+	private static int distanceKey(float distance) {
+		return Float.floatToIntBits(distance + 0.0f);
+	}
+
+	private void grow() {
+		int capacity = stageNos.length * 2;
+
+		stageNos = Arrays.copyOf(stageNos, capacity);
+		epochDays = Arrays.copyOf(epochDays, capacity);
+		distances = Arrays.copyOf(distances, capacity);
+		types = Arrays.copyOf(types, capacity);
+		origins = Arrays.copyOf(origins, capacity);
+		destinations = Arrays.copyOf(destinations, capacity);
+		winners = Arrays.copyOf(winners, capacity);
+		podiums = Arrays.copyOf(podiums, capacity * PODIUM_SIZE);
+	}
+
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+
+		ColumnarStages other = (ColumnarStages) obj;
+
+		return getStages().equals(other.getStages());
+	}
+
+	public int hashCode() {
+		return getStages().hashCode();
+	}
+
+	public String toString() {
+		return "ColumnarStages [numberStages=" + size + ", names=" + names.size()
+				+ ", riders=" + riders.size() + "]";
+	}
+}
@@ -0,0 +1,345 @@
+package fp.types;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Thread-safe container for the Stage datatype, meant to receive live results while
+ * other threads query it.
+ *
+ * The stages are kept in an immutable snapshot made of segments of at most
+ * SEGMENT_SIZE stages. Writers never modify a snapshot: they build a new one that
+ * shares every segment except the one they change, and publish it with a
+ * compare-and-set, retrying if another writer got there first, so writers never
+ * lock.
+ *
+ * Queries run against a Stages replica of the snapshots, with its indexes and
+ * aggregates. Every snapshot records the write that produced it, linked to the
+ * previous one, and the first query after some writes replays them on the replica
+ * instead of indexing all the stages again. Queries share the replica under a read
+ * lock, and the replay takes the write lock, so a query never sees a half-applied
+ * write and runs against a snapshot at least as recent as the one that was current
+ * when it started.
+ *
+ * @author Guillermo R.N.
+ */
+public class ConcurrentStages {
+	/**
+	 * Maximum number of stages in a segment, and so the maximum number of stages
+	 * copied by a single addStage or deleteStage.
+	 */
+	public static final int SEGMENT_SIZE = 1024;
+
+	private static final Stage[][] NO_SEGMENTS = new Stage[0][];
+
+	/**
+	 * Write that produced a snapshot: either some added stages or a deleted one.
+	 */
+	private static class Change {
+		private final long version;
+		private final Stage[] added;
+		private final Stage deleted;
+		// Only followed and cut by the thread that replays the changes on the replica
+		private Change previous;
+
+		Change(long version, Stage[] added, Stage deleted, Change previous) {
+			this.version = version;
+			this.added = added;
+			this.deleted = deleted;
+			this.previous = previous;
+		}
+	}
+
+	/**
+	 * Immutable version of the container.
+	 */
+	private static class Snapshot {
+		private final Stage[][] segments;
+		private final int size;
+		private final long version;
+		private final Change change;
+
+		Snapshot(Stage[][] segments, int size, long version, Change change) {
+			this.segments = segments;
+			this.size = size;
+			this.version = version;
+			this.change = change;
+		}
+
+		/**
+		 * Gets the stages of the snapshot.
+		 * @return A new list with the stages, in insertion order.
+		 */
+		List<Stage> stages() {
+			List<Stage> result = new ArrayList<>(size);
+
+			for (Stage[] segment: segments) {
+				result.addAll(Arrays.asList(segment));
+			}
+
+			return result;
+		}
+	}
+
+	private final AtomicReference<Snapshot> current;
+	private final ReadWriteLock lock;
+	private Stages replica;
+	private volatile long replicaVersion;
+
+	/**
+	 * First constructor.
+	 */
+	public ConcurrentStages() {
+		this.current = new AtomicReference<>(new Snapshot(NO_SEGMENTS, 0, 0, null));
+		this.lock = new ReentrantReadWriteLock();
+		this.replica = new Stages();
+		this.replicaVersion = 0;
+	}
+
+	/**
+	 * Second constructor.
+	 * @param stages Collection of stages that the container will bear.
+	 */
+	public ConcurrentStages(Collection<Stage> stages) {
+		this();
+		addStages(stages);
+	}
+
+	/**
+	 * Gets the number of stages (derived property).
+	 * @return Number of stages in the container.
+	 */
+	public Integer getNumberStages() {
+		return current.get().size;
+	}
+
+	/**
+	 * Gets the number of writes applied to the container (derived property).
+	 * @return The version of the current snapshot.
+	 */
+	public Long getVersion() {
+		return current.get().version;
+	}
+
+	/**
+	 * Gets the stages of the container.
+	 * @return A new list with the stages, in insertion order.
+	 */
+	public List<Stage> getStages() {
+		return current.get().stages();
+	}
+
+	/**
+	 * Gets a copy of the current stages that can be queried and modified freely.
+	 * @return A new Stages object.
+	 */
+	public Stages getSnapshot() {
+		return new Stages(current.get().stages());
+	}
+
+	/**
+	 * Runs a query against a consistent snapshot of the container, at least as recent
+	 * as the current one. The Stages object passed to the query is shared with other
+	 * readers, so the query must not modify it. The writes made since the previous
+	 * query are applied to it first, so its indexes are never built again from scratch.
+	 * @param query The query, e.g. Stages::riderWithMostWins.
+	 * @return The result of the query.
+	 */
+	public <R> R query(Function<? super Stages, ? extends R> query) {
+		R result;
+
+		lock.readLock().lock();
+		try {
+			if (replicaVersion < current.get().version) {
+				lock.readLock().unlock();
+				lock.writeLock().lock();
+				try {
+					catchUp(current.get());
+				} finally {
+					// Downgrade, so no write is replayed while the query runs
+					lock.readLock().lock();
+					lock.writeLock().unlock();
+				}
+			}
+			result = query.apply(replica);
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Adds a stage to the container.
+	 * @param stage The stage to add.
+	 */
+	public void addStage(Stage stage) {
+		addStages(List.of(stage));
+	}
+
+	/**
+	 * Adds a collection of stages to the container. Readers see either none or all of them.
+	 * @param stages Collection of stages to add.
+	 */
+	public void addStages(Collection<Stage> stages) {
+		Stage[] added = stages.toArray(new Stage[0]);
+		Snapshot before;
+		Snapshot after;
+
+		do {
+			before = current.get();
+			after = added.length == 0 ? before : append(before, added);
+		} while (after != before && !current.compareAndSet(before, after));
+	}
+
+	/**
+	 * Deletes the first occurrence of a stage from the container.
+	 * @param stage The stage to delete.
+	 */
+	public void deleteStage(Stage stage) {
+		Snapshot before;
+		Snapshot after;
+
+		do {
+			before = current.get();
+			after = delete(before, stage);
+		} while (after != before && !current.compareAndSet(before, after));
+	}
+
+	/**
+	 * Brings the replica up to a snapshot, replaying the changes made since the
+	 * version of the replica. If they are no longer linked to it, the replica is
+	 * built again from the stages of the snapshot. Must hold the write lock.
+	 * @param snapshot The snapshot, not older than the replica.
+	 */
+	private void catchUp(Snapshot snapshot) {
+		List<Change> changes = new ArrayList<>();
+
+		for (Change c = snapshot.change; c != null && c.version > replicaVersion; c = c.previous) {
+			changes.add(c);
+		}
+
+		if (!changes.isEmpty() && changes.get(changes.size() - 1).version == replicaVersion + 1) {
+			for (int i = changes.size() - 1; i >= 0; i--) {
+				Change c = changes.get(i);
+				if (c.added != null) {
+					replica.addStages(Arrays.asList(c.added));
+				} else {
+					replica.deleteStage(c.deleted);
+				}
+			}
+			// The changes before these ones are already in the replica
+			changes.get(changes.size() - 1).previous = null;
+		} else if (snapshot.version > replicaVersion) {
+			replica = new Stages(snapshot.stages());
+		}
+		replicaVersion = snapshot.version;
+	}
+
+	/**
+	 * Links the change that produces the next snapshot to the change of the current
+	 * one. The link is dropped when more changes than stages are pending for the
+	 * replica, since building it again is cheaper than replaying them, so the pending
+	 * changes never take more memory than the stages.
+	 * @param snapshot The current snapshot.
+	 * @return The change to link to, or null.
+	 */
+	private Change previousChange(Snapshot snapshot) {
+		return snapshot.version - replicaVersion < Math.max(SEGMENT_SIZE, snapshot.size) ? snapshot.change : null;
+	}
+
+	/**
+	 * Creates a snapshot with some stages appended. Only the last segment is copied.
+	 * @param snapshot The current snapshot.
+	 * @param added The stages to append.
+	 * @return The new snapshot.
+	 */
+	private Snapshot append(Snapshot snapshot, Stage[] added) {
+		Stage[][] segments = snapshot.segments;
+		int n = segments.length;
+		Stage[] last = n == 0 ? new Stage[0] : segments[n - 1];
+		int room = SEGMENT_SIZE - last.length;
+		int newSegments = Math.max(0, added.length - room + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+		Stage[][] result = Arrays.copyOf(segments, Math.max(n, 1) + newSegments);
+
+		int copied = Math.min(room, added.length);
+		if (copied > 0) {
+			Stage[] tail = Arrays.copyOf(last, last.length + copied);
+			System.arraycopy(added, 0, tail, last.length, copied);
+			result[Math.max(n, 1) - 1] = tail;
+		}
+
+		for (int i = Math.max(n, 1); i < result.length; i++) {
+			int length = Math.min(SEGMENT_SIZE, added.length - copied);
+			result[i] = Arrays.copyOfRange(added, copied, copied + length);
+			copied += length;
+		}
+
+		return new Snapshot(result, snapshot.size + added.length, snapshot.version + 1,
+				new Change(snapshot.version + 1, added, null, previousChange(snapshot)));
+	}
+
+	/**
+	 * Creates a snapshot without the first occurrence of a stage. Only the segment
+	 * containing it is copied, and it is dropped if it becomes empty.
+	 * @param snapshot The current snapshot.
+	 * @param stage The stage to delete.
+	 * @return The new snapshot, or the same one if it does not contain the stage.
+	 */
+	private Snapshot delete(Snapshot snapshot, Stage stage) {
+		Stage[][] segments = snapshot.segments;
+		Snapshot result = snapshot;
+
+		for (int i = 0; result == snapshot && i < segments.length; i++) {
+			int position = Arrays.asList(segments[i]).indexOf(stage);
+			if (position >= 0) {
+				Stage[] segment = segments[i];
+				Stage[][] copy;
+				if (segment.length == 1) {
+					copy = new Stage[segments.length - 1][];
+					System.arraycopy(segments, 0, copy, 0, i);
+					System.arraycopy(segments, i + 1, copy, i, segments.length - i - 1);
+				} else {
+					Stage[] shorter = new Stage[segment.length - 1];
+					System.arraycopy(segment, 0, shorter, 0, position);
+					System.arraycopy(segment, position + 1, shorter, position, shorter.length - position);
+					copy = segments.clone();
+					copy[i] = shorter;
+				}
+				result = new Snapshot(copy, snapshot.size - 1, snapshot.version + 1,
+						new Change(snapshot.version + 1, null, stage, previousChange(snapshot)));
+			}
+		}
+
+		return result;
+	}
+
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+
+		ConcurrentStages other = (ConcurrentStages) obj;
+
+		return getStages().equals(other.getStages());
+	}
+
+	public int hashCode() {
+		return getStages().hashCode();
+	}
+
+	public String toString() {
+		Snapshot snapshot = current.get();
+		return "ConcurrentStages [stages=" + snapshot.size + ", segments=" + snapshot.segments.length
+				+ ", version=" + snapshot.version + "]";
+	}
+}
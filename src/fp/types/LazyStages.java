@@ -0,0 +1,268 @@
+package fp.types;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import fp.utils.Checkers;
+
+/**
+ * Read-only container for the Stage datatype that keeps the text of a .csv file and
+ * the offsets of its lines instead of Stage objects. Queries only parse the columns
+ * they read, and every parsed numeric column is kept in a primitive array for later
+ * queries. Stage objects are only created for the stages a query returns, so the
+ * validations of the Stage constructor only apply to those rows.
+ * @author Guillermo R.N.
+ */
+
+/*
+ * Column caches, created on first use:
+ * -epochDays (int[])
+ * -distances (float[])
+ * -types (byte[], StageType ordinals)
+ */
+public class LazyStages {
+	private static final int CELLS = 10;
+	private static final int DATE = 1;
+	private static final int DISTANCE = 2;
+	private static final int TYPE = 5;
+	private static final int WINNER_NAME = 6;
+	private static final int PODIUM = 9;
+
+	private String text;
+	private int size;
+	private int[] starts;
+	private int[] ends;
+	private StageInterner interner;
+
+	private int[] epochDays;
+	private float[] distances;
+	private byte[] types;
+
+	/**
+	 * Constructor. Locates the lines of a .csv file, skipping its header, and checks
+	 * that every line has 10 cells.
+	 * @param text Contents of the .csv file.
+	 */
+	LazyStages(String text) {
+		this.text = text;
+		this.starts = new int[16];
+		this.ends = new int[16];
+		this.size = 0;
+		this.interner = new StageInterner();
+
+		int[] bounds = new int[CELLS + 1];
+		int lineStart = text.indexOf('\n') + 1;
+		while (lineStart > 0 && lineStart < text.length()) {
+			int lineEnd = text.indexOf('\n', lineStart);
+			int next = lineEnd < 0 ? text.length() : lineEnd + 1;
+			lineEnd = lineEnd < 0 ? text.length() : lineEnd;
+			if (lineEnd > lineStart && text.charAt(lineEnd - 1) == '\r') {
+				lineEnd--;
+			}
+			StageParser.cellBounds(text, lineStart, lineEnd, bounds);
+			if (size == starts.length) {
+				starts = Arrays.copyOf(starts, size * 2);
+				ends = Arrays.copyOf(ends, size * 2);
+			}
+			starts[size] = lineStart;
+			ends[size] = lineEnd;
+			size++;
+			lineStart = next;
+		}
+	}
+
+	/**
+	 * Gets the number of stages (derived property).
+	 * @return Number of stages in the container.
+	 */
+	public Integer getNumberStages() {
+		return size;
+	}
+
+	/**
+	 * Parses a whole line.
+	 * @param index Position of the stage.
+	 * @return The stage in that position.
+	 */
+	public Stage getStage(int index) {
+		Checkers.check("Index out of bounds.", index >= 0 && index < size);
+		return StageParser.parseLine(text, starts[index], ends[index], interner);
+	}
+
+	/**
+	 * Parses every line.
+	 * @return A new list with all the stages, in file order.
+	 */
+	public List<Stage> getStages() {
+		List<Stage> result = new ArrayList<>(size);
+
+		for (int i = 0; i < size; i++) {
+			result.add(getStage(i));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Creates a Stages object with the stages of the file.
+	 * @return The new Stages object.
+	 */
+	public Stages toStages() {
+		return new Stages(getStages());
+	}
+
+	/**
+	 * Checks if there is a stage whose podium contains a certain rider ("Exists" criterion).
+	 * Only the podium column is read, without creating any string.
+	 * @param riderName The rider for whose existance to check.
+	 * @return true/false depending on whether there is a stage with a rider in the podium or not.
+	 */
+	public Boolean stageWithRiderInPodium(String riderName) {
+		int[] bounds = new int[CELLS + 1];
+		boolean result = false;
+
+		for (int i = 0; i < size && !result; i++) {
+			StageParser.cellBounds(text, starts[i], ends[i], bounds);
+			result = StageParser.podiumContains(text, bounds[PODIUM], bounds[PODIUM + 1] - 1, riderName);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Get the average stage distance ("Average" criterion). Only the distance column is parsed.
+	 * @return The average of the distances.
+	 */
+	public Float averageStageDistance() {
+		Checkers.check("Stage number must be greater than 0.", size > 0);
+		float[] column = distances();
+		double result = 0.0;
+
+		for (int i = 0; i < size; i++) {
+			result += column[i];
+		}
+
+		return (float) (result / size);
+	}
+
+	/**
+	 * Gets a list with all stages before a certain date (selection with filtering).
+	 * Only the date column is parsed, plus the lines of the stages found.
+	 * @param date The date used for the filtering.
+	 * @return A list containing all the stages before that date.
+	 */
+	public List<Stage> stagesBefore(LocalDate date) {
+		int[] column = epochDays();
+		long epochDay = date.toEpochDay();
+		List<Stage> result = new ArrayList<>();
+
+		for (int i = 0; i < size; i++) {
+			if (column[i] < epochDay) {
+				result.add(getStage(i));
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets the longest stage a rider has ever won (maximum with filtering). Only the
+	 * winner name and distance columns are read, plus the line of the stage found.
+	 * @param riderName The name of the rider used for the filtering.
+	 * @return The longest stage with said rider as its winner.
+	 */
+	public Stage longestStageWon(String riderName) {
+		float[] column = distances();
+		int[] bounds = new int[CELLS + 1];
+		int longest = -1;
+
+		for (int i = 0; i < size; i++) {
+			if (longest < 0 || column[i] > column[longest]) {
+				StageParser.cellBounds(text, starts[i], ends[i], bounds);
+				if (StageParser.textEquals(text, bounds[WINNER_NAME], bounds[WINNER_NAME + 1] - 1, riderName)) {
+					longest = i;
+				}
+			}
+		}
+
+		return longest < 0 ? null : getStage(longest);
+	}
+
+	/**
+	 * Gets a list of stages with the same type, sorted by distance
+	 * (selection with filtering and sorting). Only the type and distance columns are
+	 * parsed, plus the lines of the stages found.
+	 * @param type The stage type used for the filtering.
+	 * @return The list of stages of that type, sorted by distance.
+	 */
+	public List<Stage> stagesByDistanceOfType(StageType type) {
+		byte[] typeColumn = types();
+		float[] distanceColumn = distances();
+		long[] keys = new long[size];
+		int count = 0;
+
+		for (int i = 0; i < size; i++) {
+			if (typeColumn[i] == type.ordinal()) {
+				// Distances are never negative, so their IEEE bits sort like them
+				keys[count++] = ((long) Float.floatToIntBits(distanceColumn[i] + 0.0f) << 32) | i;
+			}
+		}
+
+		Arrays.sort(keys, 0, count);
+		List<Stage> result = new ArrayList<>(count);
+		for (int k = 0; k < count; k++) {
+			result.add(getStage((int) keys[k]));
+		}
+
+		return result;
+	}
+
+	private int[] epochDays() {
+		if (epochDays == null) {
+			int[] bounds = new int[CELLS + 1];
+			int[] column = new int[size];
+			for (int i = 0; i < size; i++) {
+				StageParser.cellBounds(text, starts[i], ends[i], bounds);
+				column[i] = (int) StageParser.parseDate(text, bounds[DATE], bounds[DATE + 1] - 1).toEpochDay();
+			}
+			epochDays = column;
+		}
+
+		return epochDays;
+	}
+
+	private float[] distances() {
+		if (distances == null) {
+			int[] bounds = new int[CELLS + 1];
+			float[] column = new float[size];
+			for (int i = 0; i < size; i++) {
+				StageParser.cellBounds(text, starts[i], ends[i], bounds);
+				column[i] = StageParser.parseFloat(text, bounds[DISTANCE], bounds[DISTANCE + 1] - 1);
+			}
+			distances = column;
+		}
+
+		return distances;
+	}
+
+	private byte[] types() {
+		if (types == null) {
+			int[] bounds = new int[CELLS + 1];
+			byte[] column = new byte[size];
+			for (int i = 0; i < size; i++) {
+				StageParser.cellBounds(text, starts[i], ends[i], bounds);
+				column[i] = (byte) StageParser.parseStageType(text, bounds[TYPE], bounds[TYPE + 1] - 1).ordinal();
+			}
+			types = column;
+		}
+
+		return types;
+	}
+
+	public String toString() {
+		return "LazyStages [stages=" + size + ", parsed columns="
+				+ ((epochDays == null ? 0 : 1) + (distances == null ? 0 : 1) + (types == null ? 0 : 1)) + "]";
+	}
+}
@@ -0,0 +1,25 @@
+package fp.types;
+
+/**
+ * Record to hold the results of the per-rider queries of a container for one rider.
+ * @author Guillermo R.N.
+ */
+
+/*
+ * Properties:
+ * -name (String)
+ * -wins (Integer)
+ * -podiums (Integer)
+ * -longestStageWon (Stage, null if the rider won no stage)
+ * -inPodium (Boolean, derived)
+ */
+
+public record RiderSummary(String name, Integer wins, Integer podiums, Stage longestStageWon) {
+	/**
+	 * Checks if the rider was in the podium of any stage (derived property).
+	 * @return true/false depending on whether there is a stage with the rider in the podium or not.
+	 */
+	public Boolean inPodium() {
+		return podiums > 0;
+	}
+}
@@ -7,6 +7,7 @@ import java.util.Objects;
 
 import fp.common.Rider;
 import fp.common.RiderCountry;
+import fp.common.Season;
 import fp.utils.Checkers;
 
 /**
@@ -26,15 +27,22 @@ import fp.utils.Checkers;
  * -podium (List<String>)
  * -winner (Rider)
  * 
- * Plus 2 derived properties:
- * -season (String)
- * -isTimeTrial (Boolean)
+ * Plus 3 derived properties:
+ * -season (Season)
+ * -isTimeTrial (boolean)
+ * -sortKey (long)
  */
 public record Stage(Integer stageNo, LocalDate date, Float distance, 
 					String origin, String destination, StageType type,
 					List<String> podium, Rider winner) implements Comparable<Stage> {
+	private static volatile long today = LocalDate.now().toEpochDay();
+
 	/**
-	 * First constructor.
+	 * First constructor. The podium is stored as an immutable copy, so that the
+	 * podium and winner accessors can return the stored values without copying them.
+	 * All the constraints are tested at once, and each one is only checked separately
+	 * (to report it) when that test fails. The current date comes from a cache, so that
+	 * loaders creating many stages do not read the clock for each one.
 	 * @param stageNo Number of the stage to be created.
 	 * @param date Date of the stage to be created.
 	 * @param distance Distance of the stage to be created.
@@ -45,10 +53,8 @@ public record Stage(Integer stageNo, LocalDate date, Float distance,
 	 * @param winner Winner of the stage to be created.
 	 */
 	public Stage {
-		Checkers.check("Stage number must be greater than 0.", stageNo > 0);
-		Checkers.check("Distance must be greater than or equal to 0.0f.", distance >= 0.0f);
-		Checkers.check("Date must be before current date.", date.isBefore(LocalDate.now()));
-		Checkers.check("Podium must contain a maximum of three elements.", podium.size() <= 3);
+		check(stageNo, date, distance, podium);
+		podium = List.copyOf(podium);
 	}
 	
 	/**
@@ -87,33 +93,98 @@ public record Stage(Integer stageNo, LocalDate date, Float distance,
 	}
 
 	public List<String> podium() {
-		return new ArrayList<String>(this.podium);
+		return podium;
 	}
 
 	public Rider winner() {
-		return new Rider(this.winner);
+		return winner;
 	}
 	
 	/**
-	 * Derived property.
+	 * Derived property. Seasons are shared, so it does not create any object.
 	 * @return The season to which the stage belongs.
 	 */
-	public String season() {
-		return (date().getYear() - 1) + "-" + date().getYear();
+	public Season season() {
+		return Season.of(date);
 	}
 	
 	/**
 	 * Derived property.
 	 * @return Whether the stage was a time trial or not.
 	 */
-	public Boolean isTimeTrial() {
-		return (type().equals(StageType.TIME_TRIAL));
+	public boolean isTimeTrial() {
+		return type == StageType.TIME_TRIAL;
+	}
+	
+	/**
+	 * Checks the constraints of the first constructor without creating a stage.
+	 * All the constraints are tested at once, and each one is only checked separately
+	 * (to report it) when that test fails.
+	 * @param stageNo Number of the stage.
+	 * @param date Date of the stage.
+	 * @param distance Distance of the stage.
+	 * @param podium Podium of the stage.
+	 * @throws IllegalArgumentException If a constraint is not met.
+	 */
+	public static void check(Integer stageNo, LocalDate date, Float distance, List<String> podium) {
+		if (!(stageNo > 0 && distance >= 0.0f && isBeforeToday(date) && podium.size() <= 3)) {
+			Checkers.check("Stage number must be greater than 0.", stageNo > 0);
+			Checkers.check("Distance must be greater than or equal to 0.0f.", distance >= 0.0f);
+			Checkers.check("Date must be before current date.", isBeforeToday(date));
+			Checkers.check("Podium must contain a maximum of three elements.", podium.size() <= 3);
+		}
+	}
+
+	/**
+	 * Checks if a date is before the current date. The current date is cached and only
+	 * read again from the clock when the date is not before the cached one: the cache
+	 * can only be behind the clock, so any date before it is before the current date too.
+	 * Stages of past dates are thus checked without reading the clock or the time zone rules.
+	 * @param date The date to check.
+	 * @return true if the date is before the current date.
+	 */
+	private static boolean isBeforeToday(LocalDate date) {
+		long epochDay = date.toEpochDay();
+		boolean result = epochDay < today;
+
+		if (!result) {
+			today = LocalDate.now().toEpochDay();
+			result = epochDay < today;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Derived property. Stages are sorted by this key, which packs the date and the
+	 * stage number in a long, so comparing two stages compares two primitives.
+	 * @return The number of days since 1970-01-01 of the date, followed by the stage number in the lower 32 bits.
+	 */
+	public long sortKey() {
+		return (date.toEpochDay() << 32) | stageNo;
 	}
 	
+	/**
+	 * Same value as Objects.hash over the properties, without creating an array or
+	 * boxing the distance. The hash codes of the strings are cached by the strings.
+	 */
 	public int hashCode() {
-		return Objects.hash(date, destination, distance, origin, podium, stageNo, type, winner);
+		int result = 31 + date.hashCode();
+		
+		result = 31 * result + Objects.hashCode(destination);
+		result = 31 * result + Float.hashCode(distance);
+		result = 31 * result + Objects.hashCode(origin);
+		result = 31 * result + podium.hashCode();
+		result = 31 * result + stageNo;
+		result = 31 * result + Objects.hashCode(type);
+		result = 31 * result + Objects.hashCode(winner);
+		
+		return result;
 	}
 
+	/**
+	 * Compares the primitive properties first, and the text ones last.
+	 */
 	public boolean equals(Object obj) {
 		if (this == obj)
 			return true;
@@ -124,26 +195,19 @@ public record Stage(Integer stageNo, LocalDate date, Float distance,
 		
 		Stage other = (Stage) obj;
 		
-		return Objects.equals(date, other.date) && Objects.equals(destination, other.destination)
-				&& Objects.equals(distance, other.distance) && Objects.equals(origin, other.origin)
-				&& Objects.equals(podium, other.podium) && Objects.equals(stageNo, other.stageNo) && type == other.type
-				&& Objects.equals(winner, other.winner);
+		return stageNo.intValue() == other.stageNo.intValue() && type == other.type
+				&& Float.floatToIntBits(distance) == Float.floatToIntBits(other.distance)
+				&& date.equals(other.date) && Objects.equals(winner, other.winner)
+				&& Objects.equals(origin, other.origin) && Objects.equals(destination, other.destination)
+				&& podium.equals(other.podium);
 	}
 
 	public int compareTo(Stage s) {
-		int res;
-		
-		Checkers.checkNoNull(s);
-		
-		if (this.date.isBefore(s.date()))
-			res = -1;
-		else if (this.date.isAfter(s.date()))
-			res = 1;
-		else {
-			res = this.stageNo.compareTo(s.stageNo());
+		if (s == null) {
+			Checkers.checkNoNull(s);
 		}
 		
-		return res;
+		return Long.compare(sortKey(), s.sortKey());
 	}
 	
 	public String toString() {
@@ -0,0 +1,236 @@
+package fp.types;
+
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import fp.common.Rider;
+import fp.common.Season;
+
+/**
+ * Aggregates over the stages of a Stages container, updated on every insertion and
+ * deletion instead of being recomputed by the queries.
+ *
+ * The distance sum is kept in a double. Every float distance is a multiple of its ulp,
+ * so the sum is exact, and deleting a stage leaves the same sum as never adding it, only
+ * while the sum stays below 2^53 times the smallest ulp of the distances added (2^33 km
+ * when every distance is 8 km or more). Beyond that bound, deletions may leave an error
+ * of a few ulps of the sum. The sums of the partitions behave the same way.
+ *
+ * Besides the aggregates of the whole container, it keeps a partition with the
+ * aggregates of every year, so the aggregates of a range of years only combine the
+ * partitions in that range.
+ *
+ * @author Guillermo R.N.
+ */
+class StageAggregates {
+	/**
+	 * Orders the stages won by a rider by date, ties in container order.
+	 */
+	private static final Comparator<StageIndex.Entry> BY_DATE =
+			Comparator.comparing((StageIndex.Entry e)->e.stage().date())
+			.thenComparingLong(StageIndex.Entry::seq);
+
+	private int count;
+	private double distanceSum;
+	private Map<Rider, Integer> winCounts;
+	private NavigableMap<Integer, Set<Rider>> ridersByWins;
+	private Map<StageType, Map<String, Integer>> typeWinners;
+	private Map<Rider, NavigableSet<StageIndex.Entry>> winsByRider;
+	private NavigableMap<Integer, StagePartition> byYear;
+
+	/**
+	 * Constructor. Creates the aggregates of an empty container.
+	 */
+	StageAggregates() {
+		this.count = 0;
+		this.distanceSum = 0.0;
+		this.winCounts = new HashMap<>();
+		this.ridersByWins = new TreeMap<>();
+		this.typeWinners = new EnumMap<>(StageType.class);
+		this.winsByRider = new HashMap<>();
+		this.byYear = new TreeMap<>();
+	}
+
+	/**
+	 * Updates the aggregates with an added stage.
+	 * @param entry The entry of the stage in the indexes.
+	 */
+	void add(StageIndex.Entry entry) {
+		Stage stage = entry.stage();
+		Rider winner = stage.winner();
+		int wins = winCounts.getOrDefault(winner, 0);
+
+		count++;
+		distanceSum += stage.distance();
+		moveRider(winner, wins, wins + 1);
+		typeWinners.computeIfAbsent(stage.type(), k->new HashMap<>())
+				.merge(winner.name(), 1, Integer::sum);
+		winsByRider.computeIfAbsent(winner, k->new TreeSet<>(BY_DATE)).add(entry);
+		byYear.computeIfAbsent(stage.date().getYear(), k->new StagePartition()).add(stage);
+	}
+
+	/**
+	 * Updates the aggregates with a deleted stage.
+	 * @param entry The entry the stage had in the indexes.
+	 */
+	void remove(StageIndex.Entry entry) {
+		Stage stage = entry.stage();
+		Rider winner = stage.winner();
+		int wins = winCounts.get(winner);
+
+		count--;
+		distanceSum -= stage.distance();
+		moveRider(winner, wins, wins - 1);
+
+		Map<String, Integer> ofType = typeWinners.get(stage.type());
+		if (ofType.merge(winner.name(), -1, Integer::sum) == 0) {
+			ofType.remove(winner.name());
+			if (ofType.isEmpty()) {
+				typeWinners.remove(stage.type());
+			}
+		}
+
+		NavigableSet<StageIndex.Entry> won = winsByRider.get(winner);
+		won.remove(entry);
+		if (won.isEmpty()) {
+			winsByRider.remove(winner);
+		}
+
+		StagePartition year = byYear.get(stage.date().getYear());
+		year.remove(stage);
+		if (year.isEmpty()) {
+			byYear.remove(stage.date().getYear());
+		}
+	}
+
+	/**
+	 * Gets the average distance of the stages.
+	 * @return The average distance.
+	 */
+	Float averageDistance() {
+		return (float) (distanceSum / count);
+	}
+
+	/**
+	 * Gets the number of stages won by every winner.
+	 * @return A new map associating every winner to their number of wins.
+	 */
+	Map<Rider, Integer> winCounts() {
+		return new HashMap<>(winCounts);
+	}
+
+	/**
+	 * Gets the names of the winners of every stage type.
+	 * @return A new map associating every stage type to the names of its winners.
+	 */
+	Map<StageType, Set<String>> winnersByType() {
+		Map<StageType, Set<String>> result = new HashMap<>();
+
+		for (Map.Entry<StageType, Map<String, Integer>> e: typeWinners.entrySet()) {
+			result.put(e.getKey(), new HashSet<>(e.getValue().keySet()));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets the earliest stage won by every winner (the first one in the container if
+	 * they won several on that date).
+	 * @return A new map associating every winner to their earliest stage.
+	 */
+	Map<Rider, Stage> firstStageByRider() {
+		Map<Rider, Stage> result = new HashMap<>();
+
+		for (Map.Entry<Rider, NavigableSet<StageIndex.Entry>> e: winsByRider.entrySet()) {
+			result.put(e.getKey(), e.getValue().first().stage());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets a rider with the greatest number of wins.
+	 * @return The rider, or null if there are no stages.
+	 */
+	Rider riderWithMostWins() {
+		return ridersByWins.isEmpty() ? null : ridersByWins.lastEntry().getValue().iterator().next();
+	}
+
+	/**
+	 * Gets the aggregates of the stages of a range of years.
+	 * @param fromYear First year of the range.
+	 * @param toYear Last year of the range.
+	 * @return The combined aggregates of the partitions in the range.
+	 */
+	StageStatistics statistics(int fromYear, int toYear) {
+		StagePartition result = new StagePartition();
+
+		for (StagePartition year: byYear.subMap(fromYear, true, toYear, true).values()) {
+			result.addAll(year);
+		}
+
+		return result.toStatistics();
+	}
+
+	/**
+	 * Gets the aggregates of every year.
+	 * @return A new map associating every year with stages to its aggregates.
+	 */
+	SortedMap<Integer, StageStatistics> statisticsByYear() {
+		SortedMap<Integer, StageStatistics> result = new TreeMap<>();
+
+		for (Map.Entry<Integer, StagePartition> e: byYear.entrySet()) {
+			result.put(e.getKey(), e.getValue().toStatistics());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets the aggregates of every season. The stages of a season are those of the
+	 * year in which it ends.
+	 * @return A new map associating every season with stages to its aggregates.
+	 */
+	SortedMap<Season, StageStatistics> statisticsBySeason() {
+		SortedMap<Season, StageStatistics> result = new TreeMap<>();
+
+		for (Map.Entry<Integer, StagePartition> e: byYear.entrySet()) {
+			result.put(Season.of(e.getKey() - 1), e.getValue().toStatistics());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Moves a rider between two buckets of ridersByWins and updates their win count.
+	 * @param rider The rider.
+	 * @param from Previous number of wins.
+	 * @param to New number of wins.
+	 */
+	private void moveRider(Rider rider, int from, int to) {
+		if (from > 0) {
+			Set<Rider> bucket = ridersByWins.get(from);
+			bucket.remove(rider);
+			if (bucket.isEmpty()) {
+				ridersByWins.remove(from);
+			}
+		}
+
+		if (to > 0) {
+			ridersByWins.computeIfAbsent(to, k->new LinkedHashSet<>()).add(rider);
+			winCounts.put(rider, to);
+		} else {
+			winCounts.remove(rider);
+		}
+	}
+}
@@ -1,25 +1,31 @@
 package fp.types;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import fp.common.Rider;
-import fp.common.RiderCountry;
-import fp.utils.Checkers;
-
 /**
  * Factory class for the Stage datatype.
  * @author Guillermo R.N.
  */
 public class StageFactory {
+	private static final long MIN_CHUNK_SIZE = 1 << 20;
+	private static final long MAX_CHUNK_SIZE = 64 << 20;
+	
 	/**
 	 * Read stages from a .csv file.
 	 * @param path File path of the .csv file.
@@ -28,10 +34,10 @@ public class StageFactory {
 	public static Stages readStages(String path) {
 		Stages result = null;
 		
-		try {
-			Stream<Stage> stages = Files.lines(Paths.get(path))
-									.skip(1)
-									.map(StageFactory::parseLine);
+		try (Stream<String> lines = Files.lines(Paths.get(path))) {
+			StageInterner interner = new StageInterner();
+			Stream<Stage> stages = lines.skip(1)
+									.map(line->parseLine(line, interner));
 			result = new Stages(stages.collect(Collectors.toList()));
 		} catch (IOException e) {
 			System.out.println("Error reading .csv file.");
@@ -49,10 +55,10 @@ public class StageFactory {
 	public static Stages readStagesToStream(String path) {
 		Stages result = null;
 		
-		try {
-			Stream<Stage> stages = Files.lines(Paths.get(path))
-									.skip(1)
-									.map(StageFactory::parseLine);
+		try (Stream<String> lines = Files.lines(Paths.get(path))) {
+			StageInterner interner = new StageInterner();
+			Stream<Stage> stages = lines.skip(1)
+									.map(line->parseLine(line, interner));
 			result = new Stages(stages);
 		} catch (IOException e) {
 			System.out.println("Error reading .csv file.");
@@ -63,53 +69,268 @@ public class StageFactory {
 	}
 	
 	/**
-	 * Parse a .csv line.
-	 * @param line The line to parse.
-	 * @return A Stage object resulting from parsing the line.
+	 * Read a .csv file into a LazyStages view. The file is only split into lines;
+	 * its cells are parsed when a query needs them.
+	 * @param path File path of the .csv file.
+	 * @return A LazyStages object over the contents of the file.
 	 */
-	private static Stage parseLine(String line) {
-		String[] chunks = line.split(",");
-		Checkers.check("Number of cells per line must be equal to 10.",
-					chunks.length == 10);
-		Stage result = null;
+	public static LazyStages readStagesLazy(String path) {
+		LazyStages result = null;
 		
-		Integer stageNo = Integer.valueOf(chunks[0].trim());
-		LocalDate date = LocalDate.parse(chunks[1].trim(),
-						DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+		try {
+			result = new LazyStages(Files.readString(Paths.get(path)));
+		} catch (IOException e) {
+			System.out.println("Error reading .csv file.");
+			e.printStackTrace();
+		}
 		
-		Float distance = Float.valueOf(chunks[2].trim());
+		return result;
+	}
+	
+	/**
+	 * Read stages from a .csv file in lenient mode. Invalid lines do not stop the
+	 * load: they are skipped and reported with their line number, the first column
+	 * that failed and the reason.
+	 * @param path File path of the .csv file.
+	 * @return A report with a Stages object containing the valid stages and the invalid lines.
+	 */
+	public static StageLoadReport readStagesLenient(String path) {
+		StageLoadReport result = null;
 		
-		String origin = chunks[3].trim();
-		String destination = chunks[4].trim();
+		try (BufferedReader reader = Files.newBufferedReader(Paths.get(path))) {
+			StageInterner interner = new StageInterner();
+			LocalDate today = LocalDate.now();
+			List<Stage> stages = new ArrayList<>();
+			List<StageLoadError> errors = new ArrayList<>();
+			int lineNumber = 1;
 		
-		StageType type = StageType.valueOf(chunks[5].trim());
-		Rider winner = new Rider(chunks[6].trim(), chunks[7].trim(),
-								RiderCountry.valueOf(chunks[8].trim()));
+			reader.readLine();
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				lineNumber++;
+				Stage stage = StageParser.parseLine(line, 0, line.length(), interner, today, lineNumber, errors);
+				if (stage != null) {
+					stages.add(stage);
+				}
+			}
+			result = new StageLoadReport(new Stages(stages), errors);
+		} catch (IOException e) {
+			System.out.println("Error reading .csv file.");
+			e.printStackTrace();
+		}
 		
-		List<String> podium = parsePodium(chunks[9].trim());
+		return result;
+	}
+	
+	/**
+	 * Lazily read stages from a .csv file. Every line is parsed only when the stream
+	 * reaches it, so the file is never held in memory as a whole.
+	 * The returned stream keeps the file open and must be closed after use
+	 * (e.g. with a try-with-resources statement).
+	 * @param path File path of the .csv file.
+	 * @return A stream with the stages in the file, or an empty stream if the file could not be opened.
+	 */
+	public static Stream<Stage> streamStages(String path) {
+		Stream<Stage> result = Stream.empty();
 		
-		result = new Stage(stageNo, date, distance, origin,
-						destination, type, podium, winner);
+		try {
+			StageInterner interner = new StageInterner();
+			result = Files.lines(Paths.get(path))
+					.skip(1)
+					.map(line->parseLine(line, interner));
+		} catch (IOException e) {
+			System.out.println("Error reading .csv file.");
+			e.printStackTrace();
+		}
 		
 		return result;
 	}
 	
 	/**
-	 * Parse a stage's podium from a string.
-	 * @param podium The string to parse.
-	 * @return A list of Strings containing the parsed podium.
+	 * Read stages from a .csv file, handing every stage to a consumer as soon as
+	 * it has been parsed. Stages are not kept after the consumer returns, so memory
+	 * use is bounded by whatever the consumer itself retains.
+	 * @param path File path of the .csv file.
+	 * @param sink Consumer that receives the stages in file order.
 	 */
-	private static List<String> parsePodium(String podium) {
-		String[] chunks = podium.split("; ");
-		Checkers.check("Number of components of the podium must be equal to 3.",
-					chunks.length == 3);
+	public static void readStages(String path, Consumer<? super Stage> sink) {
+		try (Stream<Stage> stages = streamStages(path)) {
+			stages.forEachOrdered(sink);
+		}
+	}
+	
+	/**
+	 * Read stages from a .csv file using all available cores. The file is memory-mapped
+	 * and split into chunks that end at line boundaries; chunks are decoded and parsed
+	 * in parallel with fork/join and the results are merged in file order.
+	 * @param path File path of the .csv file.
+	 * @return A Stages object containing all stages in the file.
+	 */
+	public static Stages readStagesParallel(String path) {
+		Stages result = null;
 		
-		List<String> result = new ArrayList<>();
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			long[] bounds = chunkBounds(channel);
+			result = new Stages(ForkJoinPool.commonPool()
+					.invoke(new ChunkParser(channel, bounds, 0, bounds.length - 1, new StageInterner())));
+		} catch (IOException | UncheckedIOException e) {
+			System.out.println("Error reading .csv file.");
+			e.printStackTrace();
+		}
 		
-		for (String s: chunks) {
-			result.add(s);
+		return result;
+	}
+	
+	/**
+	 * Read stages from a binary snapshot written by Stages.writeSnapshot.
+	 * @param path File path of the snapshot.
+	 * @return A Stages object containing all stages in the snapshot.
+	 */
+	public static Stages readSnapshot(String path) {
+		Stages result = null;
+		
+		try {
+			result = new Stages(StageSnapshot.read(path));
+		} catch (IOException e) {
+			System.out.println("Error reading snapshot file.");
+			e.printStackTrace();
 		}
-				
+		
 		return result;
 	}
+	
+	/**
+	 * Splits a file into chunks that start right after a line break, skipping the header.
+	 * @param channel Channel of the file to split.
+	 * @return The offsets at which every chunk starts, followed by the size of the file.
+	 * @throws IOException If the file cannot be read.
+	 */
+	private static long[] chunkBounds(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE,
+								size / (4 * ForkJoinPool.getCommonPoolParallelism())));
+		List<Long> bounds = new ArrayList<>();
+		long position = nextLine(channel, 0);
+		
+		while (position < size) {
+			bounds.add(position);
+			position = nextLine(channel, position + chunkSize);
+		}
+		bounds.add(size);
+		
+		return bounds.stream().mapToLong(Long::longValue).toArray();
+	}
+	
+	/**
+	 * Finds the start of the first line after a given position.
+	 * @param channel Channel of the file to search.
+	 * @param position Position from which to search.
+	 * @return Offset right after the next line break, or the size of the file if there is none.
+	 * @throws IOException If the file cannot be read.
+	 */
+	private static long nextLine(FileChannel channel, long position) throws IOException {
+		long size = channel.size();
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * Fork/join task that parses a range of chunks of a memory-mapped file.
+	 */
+	private static class ChunkParser extends RecursiveTask<List<Stage>> {
+		private static final long serialVersionUID = 1L;
+		
+		private final FileChannel channel;
+		private final long[] bounds;
+		private final int from;
+		private final int to;
+		private final StageInterner interner;
+		
+		/**
+		 * Constructor.
+		 * @param channel Channel of the file to parse.
+		 * @param bounds Offsets at which every chunk starts, followed by the size of the file.
+		 * @param from First chunk to parse.
+		 * @param to Chunk after the last one to parse.
+		 * @param interner Dictionary shared by all chunks with the canonical names and riders.
+		 */
+		ChunkParser(FileChannel channel, long[] bounds, int from, int to, StageInterner interner) {
+			this.channel = channel;
+			this.bounds = bounds;
+			this.from = from;
+			this.to = to;
+			this.interner = interner;
+		}
+		
+		protected List<Stage> compute() {
+			List<Stage> result;
+			
+			if (to - from <= 1) {
+				result = from < to ? parseChunk(bounds[from], bounds[to]) : new ArrayList<>();
+			} else {
+				int middle = (from + to) >>> 1;
+				ChunkParser left = new ChunkParser(channel, bounds, from, middle, interner);
+				left.fork();
+				List<Stage> right = new ChunkParser(channel, bounds, middle, to, interner).compute();
+				result = left.join();
+				result.addAll(right);
+			}
+			
+			return result;
+		}
+		
+		/**
+		 * Decodes and parses every line of a chunk.
+		 * @param start Offset of the first byte of the chunk.
+		 * @param end Offset after the last byte of the chunk.
+		 * @return The stages in the chunk, in file order.
+		 */
+		private List<Stage> parseChunk(long start, long end) {
+			List<Stage> result = new ArrayList<>();
+			String text;
+			
+			try {
+				text = StandardCharsets.UTF_8
+						.decode(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start))
+						.toString();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			
+			int lineStart = 0;
+			while (lineStart < text.length()) {
+				int lineEnd = text.indexOf('\n', lineStart);
+				int next = lineEnd < 0 ? text.length() : lineEnd + 1;
+				lineEnd = lineEnd < 0 ? text.length() : lineEnd;
+				if (lineEnd > lineStart && text.charAt(lineEnd - 1) == '\r') {
+					lineEnd--;
+				}
+				result.add(StageParser.parseLine(text, lineStart, lineEnd, interner));
+				lineStart = next;
+			}
+			
+			return result;
+		}
+	}
+	
+	/**
+	 * Parse a .csv line.
+	 * @param line The line to parse.
+	 * @param interner Dictionary with the canonical names and riders of the file.
+	 * @return A Stage object resulting from parsing the line.
+	 */
+	private static Stage parseLine(String line, StageInterner interner) {
+		return StageParser.parseLine(line, interner);
+	}
 }
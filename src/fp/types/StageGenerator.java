@@ -0,0 +1,385 @@
+package fp.types;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import fp.common.Rider;
+import fp.common.RiderCountry;
+import fp.utils.Checkers;
+
+/**
+ * Generator of synthetic Tour de France stages, used to test and benchmark the
+ * project with datasets of any size.
+ *
+ * Stages are generated race by race (21 consecutive days of July, one race per season,
+ * cycling through the configured seasons). Winners are drawn from the rider pool with
+ * a skewed distribution, so a few riders win many stages, like in the real data.
+ * Every stage only depends on the seed, the configuration and its position, so the
+ * same generator always produces the same stages, even from parallel streams.
+ *
+ * @author Guillermo R.N.
+ */
+public class StageGenerator {
+	/**
+	 * Version of the generated data, increased whenever the same seed and configuration
+	 * produce different stages, so that files generated by an older version are not reused.
+	 */
+	public static final int VERSION = 2;
+	private static final int STAGES_PER_RACE = 21;
+	private static final int MAX_PODIUM_DRAWS = 32;
+	private static final String[] FIRST_NAMES = {
+		"Alberto", "Bernard", "Chris", "David", "Eddy", "Fabian", "Geraint", "Hugo",
+		"Ivan", "Jan", "Kevin", "Lance", "Marcel", "Nairo", "Oscar", "Peter",
+		"Quentin", "Romain", "Simon", "Thibaut", "Urs", "Vincenzo", "Warren", "Yves"
+	};
+	private static final String[] LAST_NAMES = {
+		"Armand", "Bardet", "Contador", "Dumoulin", "Evans", "Froome", "Gilbert", "Hinault",
+		"Indurain", "Jalabert", "Kittel", "LeMond", "Merckx", "Nibali", "Ocana", "Pinot",
+		"Quintana", "Roche", "Sagan", "Thomas", "Ullrich", "Valverde", "Wiggins", "Zoetemelk"
+	};
+	private static final String[] SYLLABLES = {
+		"ba", "ve", "lon", "mar", "ri", "san", "tou", "cha", "mont", "bel",
+		"gre", "no", "bla", "lu", "ser", "pa", "vil", "roc", "dor", "fa"
+	};
+	private static final String[] TEAM_WORDS = {
+		"Sky", "Astana", "Movistar", "Saxo", "Tinkoff", "Lotto", "Quick-Step", "Jumbo",
+		"Cofidis", "Groupama", "Katusha", "Trek", "Bora", "Ineos", "Sunweb", "Dimension"
+	};
+
+	private long seed;
+	private int riders;
+	private int teams;
+	private int locations;
+	private int firstSeason;
+	private int lastSeason;
+	private double winnerSkew;
+	private Map<StageType, Double> typeWeights;
+	private Map<RiderCountry, Double> countryWeights;
+
+	/**
+	 * First constructor. Creates a generator with 500 riders, 40 teams, 800 locations,
+	 * seasons 2000 to 2017, 50% flat, 35% mountain and 15% time trial stages and riders
+	 * evenly spread among all countries.
+	 * @param seed Seed that determines the generated stages.
+	 */
+	public StageGenerator(long seed) {
+		this.seed = seed;
+		this.riders = 500;
+		this.teams = 40;
+		this.locations = 800;
+		this.firstSeason = 2000;
+		this.lastSeason = 2017;
+		this.winnerSkew = 1.0;
+		this.typeWeights = new EnumMap<>(StageType.class);
+		this.typeWeights.put(StageType.FLAT, 0.50);
+		this.typeWeights.put(StageType.MOUNTAIN, 0.35);
+		this.typeWeights.put(StageType.TIME_TRIAL, 0.15);
+		this.countryWeights = new EnumMap<>(RiderCountry.class);
+		for (RiderCountry country: RiderCountry.values()) {
+			this.countryWeights.put(country, 1.0);
+		}
+	}
+
+	public void setRiders(int riders) {
+		Checkers.check("Number of riders must be greater than or equal to 3.", riders >= 3);
+		this.riders = riders;
+	}
+
+	public void setTeams(int teams) {
+		Checkers.check("Number of teams must be greater than 0.", teams > 0);
+		this.teams = teams;
+	}
+
+	public void setLocations(int locations) {
+		Checkers.check("Number of locations must be greater than 0.", locations > 0);
+		this.locations = locations;
+	}
+
+	/**
+	 * Sets the seasons in which the stages take place.
+	 * @param firstSeason Year of the first race.
+	 * @param lastSeason Year of the last race (it must be over by now).
+	 */
+	public void setSeasons(int firstSeason, int lastSeason) {
+		Checkers.check("First season must not be after the last one.", firstSeason <= lastSeason);
+		Checkers.check("Last season must be before the current one.", lastSeason < LocalDate.now().getYear());
+		this.firstSeason = firstSeason;
+		this.lastSeason = lastSeason;
+	}
+
+	/**
+	 * Sets how concentrated the wins are: rider k (k = 1, 2...) wins with a probability
+	 * proportional to 1 / k^skew. A skew of 0 spreads wins evenly.
+	 * @param winnerSkew The skew of the distribution of winners.
+	 */
+	public void setWinnerSkew(double winnerSkew) {
+		Checkers.check("Winner skew must be greater than or equal to 0.", winnerSkew >= 0.0);
+		this.winnerSkew = winnerSkew;
+	}
+
+	/**
+	 * Sets the relative frequency of every stage type. Missing types are never generated.
+	 * @param typeWeights Map associating stage types to their weights.
+	 */
+	public void setTypeWeights(Map<StageType, Double> typeWeights) {
+		Checkers.check("At least one stage type must have a positive weight.",
+					typeWeights.values().stream().anyMatch(w->w > 0.0));
+		this.typeWeights = new EnumMap<>(typeWeights);
+	}
+
+	/**
+	 * Sets the relative frequency of every rider country. Missing countries are never generated.
+	 * @param countryWeights Map associating countries to their weights.
+	 */
+	public void setCountryWeights(Map<RiderCountry, Double> countryWeights) {
+		Checkers.check("At least one country must have a positive weight.",
+					countryWeights.values().stream().anyMatch(w->w > 0.0));
+		this.countryWeights = new EnumMap<>(countryWeights);
+	}
+
+	/**
+	 * Generates stages.
+	 * @param n Number of stages to generate.
+	 * @return A stream with the stages, which gives the same stages whether it is
+	 * sequential or parallel.
+	 */
+	public Stream<Stage> generate(long n) {
+		Model model = new Model();
+		return LongStream.range(0, n).mapToObj(model::stage);
+	}
+
+	/**
+	 * Writes stages to a .csv file with the same format as the project's dataset.
+	 * @param path File path of the .csv file.
+	 * @param n Number of stages to generate.
+	 */
+	public void writeCsv(String path, long n) {
+		try (BufferedWriter out = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8)) {
+			out.write("StageNo,Date,Distance,Origin,Destination,Type,WinnerName,WinnerTeam,WinnerCountry,Podium");
+			out.newLine();
+
+			for (Stage s: (Iterable<Stage>) generate(n)::iterator) {
+				out.write(s.stageNo() + "," + s.date() + "," + s.distance() + "," + s.origin() + ","
+						+ s.destination() + "," + s.type() + "," + s.winner().name() + ","
+						+ s.winner().team() + "," + s.winner().country() + "," + String.join("; ", s.podium()));
+				out.newLine();
+			}
+		} catch (IOException e) {
+			System.out.println("Error writing .csv file.");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes stages to a binary snapshot, which can be read with StageFactory.readSnapshot.
+	 * @param path File path of the snapshot.
+	 * @param n Number of stages to generate.
+	 */
+	public void writeSnapshot(String path, int n) {
+		new Stages(generate(n)).writeSnapshot(path);
+	}
+
+	public String toString() {
+		return "StageGenerator [seed=" + seed + ", riders=" + riders + ", teams=" + teams
+				+ ", locations=" + locations + ", seasons=" + firstSeason + "-" + lastSeason
+				+ ", winnerSkew=" + winnerSkew + ", typeWeights=" + typeWeights
+				+ ", countryWeights=" + countryWeights + "]";
+	}
+
+	/**
+	 * Tables derived from the configuration when generation starts, so that later
+	 * changes to the generator do not affect streams that are already running.
+	 */
+	private class Model {
+		private final long seed;
+		private final int seasons;
+		private final int firstSeason;
+		private final Rider[] riders;
+		private final String[] locations;
+		private final double[] winnerCdf;
+		private final StageType[] types;
+		private final double[] typeCdf;
+
+		Model() {
+			SplittableRandom random = new SplittableRandom(StageGenerator.this.seed);
+			RiderCountry[] countries = countryWeights.keySet().toArray(new RiderCountry[0]);
+			double[] countryCdf = cdf(countryWeights.values());
+
+			this.seed = StageGenerator.this.seed;
+			this.seasons = lastSeason - StageGenerator.this.firstSeason + 1;
+			this.firstSeason = StageGenerator.this.firstSeason;
+
+			this.riders = new Rider[StageGenerator.this.riders];
+			for (int i = 0; i < this.riders.length; i++) {
+				this.riders[i] = new Rider(riderName(i), teamName(random.nextInt(teams)),
+											countries[pick(countryCdf, random.nextDouble())]);
+			}
+
+			this.locations = new String[StageGenerator.this.locations];
+			for (int i = 0; i < this.locations.length; i++) {
+				this.locations[i] = locationName(i);
+			}
+
+			double[] winnerWeights = new double[this.riders.length];
+			for (int i = 0; i < winnerWeights.length; i++) {
+				winnerWeights[i] = 1.0 / Math.pow(i + 1, winnerSkew);
+			}
+			this.winnerCdf = cdf(Arrays.stream(winnerWeights).boxed().toList());
+
+			this.types = typeWeights.keySet().toArray(new StageType[0]);
+			this.typeCdf = cdf(typeWeights.values());
+		}
+
+		/**
+		 * Generates the stage in a certain position.
+		 * @param i Position of the stage.
+		 * @return The generated stage.
+		 */
+		Stage stage(long i) {
+			SplittableRandom random = new SplittableRandom(mix(seed, i));
+			long race = i / STAGES_PER_RACE;
+			int stageNo = (int) (i % STAGES_PER_RACE) + 1;
+			LocalDate date = LocalDate.of(firstSeason + (int) (race % seasons), 7, 1).plusDays(stageNo - 1);
+
+			StageType type = types[pick(typeCdf, random.nextDouble())];
+			float distance = switch (type) {
+				case TIME_TRIAL -> 10 + random.nextInt(100) / 2.0f;
+				case MOUNTAIN -> 140 + random.nextInt(160) / 2.0f;
+				default -> 150 + random.nextInt(170) / 2.0f;
+			};
+
+			int winner = pick(winnerCdf, random.nextDouble());
+			int second = otherRider(random, winner, -1);
+			int third = otherRider(random, winner, second);
+
+			return new Stage(stageNo, date, distance,
+							locations[random.nextInt(locations.length)],
+							locations[random.nextInt(locations.length)],
+							type,
+							List.of(riders[winner].name(), riders[second].name(), riders[third].name()),
+							riders[winner]);
+		}
+
+		/**
+		 * Draws a podium rider other than the ones already on the podium. With a high
+		 * skew the first riders may take the whole distribution, so after a bounded number
+		 * of draws the rider is picked evenly among the remaining ones.
+		 * @param random The random numbers of the stage.
+		 * @param first Position of the winner.
+		 * @param second Position of the second rider, or -1 if it has not been drawn yet.
+		 * @return Position of a rider different from first and second.
+		 */
+		private int otherRider(SplittableRandom random, int first, int second) {
+			int result = pick(winnerCdf, random.nextDouble());
+
+			for (int draws = 1; draws < MAX_PODIUM_DRAWS && (result == first || result == second); draws++) {
+				result = pick(winnerCdf, random.nextDouble());
+			}
+			if (result == first || result == second) {
+				result = random.nextInt(riders.length);
+				while (result == first || result == second) {
+					result = (result + 1) % riders.length;
+				}
+			}
+
+			return result;
+		}
+	}
+
+	private static String riderName(int i) {
+		String result = FIRST_NAMES[i % FIRST_NAMES.length] + " "
+						+ LAST_NAMES[(i / FIRST_NAMES.length) % LAST_NAMES.length];
+		int round = i / (FIRST_NAMES.length * LAST_NAMES.length);
+
+		return round == 0 ? result : result + " " + (round + 1);
+	}
+
+	private static String teamName(int i) {
+		String result = TEAM_WORDS[i % TEAM_WORDS.length];
+		int round = i / TEAM_WORDS.length;
+
+		return round == 0 ? result : result + "-" + TEAM_WORDS[(i + round) % TEAM_WORDS.length] + " " + round;
+	}
+
+	private static String locationName(int i) {
+		StringBuilder result = new StringBuilder();
+		int rest = i;
+
+		do {
+			result.append(SYLLABLES[rest % SYLLABLES.length]);
+			rest /= SYLLABLES.length;
+		} while (rest > 0);
+		result.append(SYLLABLES[(i * 7 + 3) % SYLLABLES.length]);
+		result.setCharAt(0, Character.toUpperCase(result.charAt(0)));
+
+		return result.toString();
+	}
+
+	/**
+	 * Builds a cumulative distribution from some weights.
+	 * @param weights The weights, in order.
+	 * @return An array whose position k holds the sum of the first k + 1 weights divided by the total.
+	 */
+	private static double[] cdf(Collection<Double> weights) {
+		double[] result = new double[weights.size()];
+		double total = 0.0;
+		int i = 0;
+
+		for (Double w: weights) {
+			total += Math.max(w, 0.0);
+			result[i++] = total;
+		}
+		for (i = 0; i < result.length; i++) {
+			result[i] /= total;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Picks a position of a cumulative distribution.
+	 * @param cdf The cumulative distribution.
+	 * @param u A random number between 0 (inclusive) and 1 (exclusive).
+	 * @return The first position whose cumulative value is greater than u.
+	 */
+	private static int pick(double[] cdf, double u) {
+		int low = 0;
+		int high = cdf.length - 1;
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (cdf[middle] > u) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Mixes the seed with the position of a stage (SplitMix64 finalizer).
+	 * @param seed The seed of the generator.
+	 * @param i Position of the stage.
+	 * @return A seed for the random numbers of that stage.
+	 */
+	private static long mix(long seed, long i) {
+		long z = seed + (i + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,60 @@
+package fp.types;
+
+/**
+ * Handle to a stage of a Stages container, returned by addStage. A handle keeps
+ * referring to the same stage while the container grows and shrinks, so the stage
+ * can be deleted or replaced without searching for it.
+ * @author Guillermo R.N.
+ */
+
+/*
+ * Properties:
+ * -stage (Stage, null once deleted)
+ * -deleted (Boolean, derived)
+ */
+public final class StageHandle {
+	private final Stages owner;
+	private StageIndex.Entry entry;
+
+	/**
+	 * Constructor.
+	 * @param owner The container of the stage.
+	 * @param entry The entry of the stage in the indexes of the container.
+	 */
+	StageHandle(Stages owner, StageIndex.Entry entry) {
+		this.owner = owner;
+		this.entry = entry;
+	}
+
+	/**
+	 * Gets the stage the handle refers to.
+	 * @return The stage, or null if it has been deleted.
+	 */
+	public Stage getStage() {
+		return entry == null ? null : entry.stage();
+	}
+
+	/**
+	 * Checks if the stage has been deleted (derived property).
+	 * @return true if the stage is no longer in the container.
+	 */
+	public Boolean isDeleted() {
+		return entry == null;
+	}
+
+	Stages owner() {
+		return owner;
+	}
+
+	StageIndex.Entry entry() {
+		return entry;
+	}
+
+	void setEntry(StageIndex.Entry entry) {
+		this.entry = entry;
+	}
+
+	public String toString() {
+		return "StageHandle [stage=" + getStage() + "]";
+	}
+}
@@ -0,0 +1,601 @@
+package fp.types;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import fp.utils.CompressedBitmap;
+
+/**
+ * Secondary indexes over the stages of a Stages container.
+ *
+ * Every stage is registered together with a sequence number that grows with every
+ * insertion, so the position of a stage in the container can be recovered from any
+ * index. Buckets keep their entries in sequence order, and the by-type buckets are
+ * sorted by distance (ties in sequence order), which matches a stable sort of the
+ * container. New stages are appended to the by-type buckets and a bucket is only
+ * sorted again when it is read, so building the indexes costs a single sort. Podium
+ * membership is kept as a compressed bitmap of sequence numbers per rider, so podium
+ * queries are intersections and differences of bitmaps.
+ *
+ * Removing a stage only marks its entry as removed: the entry stays in its buckets
+ * as a tombstone until the bucket is read again or the indexes are compacted, so
+ * removals never shift the buckets.
+ *
+ * @author Guillermo R.N.
+ */
+class StageIndex {
+	/**
+	 * Stage registered in the indexes, with its insertion sequence number. Compacting
+	 * the indexes renumbers the entries in place without changing their order, so
+	 * anything sorted by sequence number stays sorted.
+	 */
+	static final class Entry {
+		private long seq;
+		private final Stage stage;
+		private boolean removed;
+
+		/**
+		 * Constructor.
+		 * @param seq Sequence number of the stage.
+		 * @param stage The stage.
+		 */
+		Entry(long seq, Stage stage) {
+			this.seq = seq;
+			this.stage = stage;
+			this.removed = false;
+		}
+
+		long seq() {
+			return seq;
+		}
+
+		Stage stage() {
+			return stage;
+		}
+
+		boolean isRemoved() {
+			return removed;
+		}
+
+		public String toString() {
+			return "Entry [seq=" + seq + ", stage=" + stage + (removed ? ", removed" : "") + "]";
+		}
+	}
+
+	/**
+	 * Entries of a key of an index, in sequence order or, for the by-type buckets,
+	 * sorted by distance. Removed entries are dropped, and the bucket sorted if needed,
+	 * the next time it is read. Reads of a container that is not being modified may
+	 * run concurrently, so that step is synchronized.
+	 */
+	private static final class Bucket {
+		private List<Entry> entries = new ArrayList<>();
+		private int live;
+		private boolean unsorted;
+		private int sortedPrefix;
+
+		void add(Entry entry) {
+			entries.add(entry);
+			live++;
+		}
+
+		/**
+		 * Appends an entry to a by-type bucket. If the entry is shorter than the last one,
+		 * the bucket is marked to be sorted, remembering how many entries were sorted.
+		 * @param entry The added entry.
+		 */
+		void addByDistance(Entry entry) {
+			if (!unsorted && !entries.isEmpty()
+					&& entries.get(entries.size() - 1).stage().distance() > entry.stage().distance()) {
+				unsorted = true;
+				sortedPrefix = entries.size();
+			}
+			add(entry);
+		}
+
+		void remove() {
+			live--;
+		}
+
+		int size() {
+			return live;
+		}
+
+		/**
+		 * Gets the entries of the bucket that have not been removed.
+		 * @return The entries. The list must not be modified.
+		 */
+		synchronized List<Entry> entries() {
+			if (unsorted) {
+				entries = merge();
+				unsorted = false;
+			} else if (entries.size() > live) {
+				entries.removeIf(Entry::isRemoved);
+			}
+
+			return entries;
+		}
+
+		/**
+		 * Sorts the entries appended after the sorted prefix and merges both runs in
+		 * linear time, dropping the removed entries.
+		 * @return The live entries, sorted by distance.
+		 */
+		private List<Entry> merge() {
+			List<Entry> tail = new ArrayList<>(entries.subList(sortedPrefix, entries.size()));
+			List<Entry> result = new ArrayList<>(live);
+			int i = 0;
+			int j = 0;
+
+			tail.removeIf(Entry::isRemoved);
+			tail.sort(BY_DISTANCE);
+			while (i < sortedPrefix || j < tail.size()) {
+				if (i < sortedPrefix && entries.get(i).isRemoved()) {
+					i++;
+				} else if (j == tail.size()
+						|| i < sortedPrefix && BY_DISTANCE.compare(entries.get(i), tail.get(j)) <= 0) {
+					result.add(entries.get(i++));
+				} else {
+					result.add(tail.get(j++));
+				}
+			}
+
+			return result;
+		}
+	}
+
+	private static final Comparator<Entry> BY_SEQ = Comparator.comparingLong(Entry::seq);
+	private static final Comparator<Entry> BY_DISTANCE = Comparator.comparingDouble((Entry e)->e.stage().distance())
+																	.thenComparingLong(Entry::seq);
+	private static final CompressedBitmap EMPTY = new CompressedBitmap();
+
+	private long nextSeq;
+	private int size;
+	private Map<String, Bucket> byWinnerName;
+	private List<Entry> bySeq;
+	private Map<String, CompressedBitmap> byPodiumMember;
+	private NavigableMap<LocalDate, Bucket> byDate;
+	private Map<StageType, Bucket> byType;
+	private Map<Integer, Bucket> byNumber;
+
+	/**
+	 * First constructor. Creates empty indexes.
+	 */
+	StageIndex() {
+		this.nextSeq = 0;
+		this.size = 0;
+		this.byWinnerName = new HashMap<>();
+		this.bySeq = new ArrayList<>();
+		this.byPodiumMember = new HashMap<>();
+		this.byDate = new TreeMap<>();
+		this.byType = new EnumMap<>(StageType.class);
+		this.byNumber = new HashMap<>();
+	}
+
+	/**
+	 * Second constructor.
+	 * @param stages Stages to index, in container order.
+	 */
+	StageIndex(Collection<Stage> stages) {
+		this();
+		for (Stage s: stages) {
+			add(s);
+		}
+	}
+
+	/**
+	 * Registers a stage appended at the end of the container.
+	 * @param stage The added stage.
+	 * @return The entry of the stage.
+	 */
+	Entry add(Stage stage) {
+		Entry entry = new Entry(nextSeq++, stage);
+
+		byWinnerName.computeIfAbsent(stage.winner().name(), k->new Bucket()).add(entry);
+		bySeq.add(entry);
+		size++;
+		for (String rider: stage.podium()) {
+			byPodiumMember.computeIfAbsent(rider, k->new CompressedBitmap()).add((int) entry.seq());
+		}
+		byDate.computeIfAbsent(stage.date(), k->new Bucket()).add(entry);
+		byNumber.computeIfAbsent(stage.stageNo(), k->new Bucket()).add(entry);
+		byType.computeIfAbsent(stage.type(), k->new Bucket()).addByDistance(entry);
+
+		return entry;
+	}
+
+	/**
+	 * Unregisters the first occurrence of a stage (the one with the lowest sequence number).
+	 * @param stage The deleted stage.
+	 * @return The entry of the removed stage, or null if it was not registered.
+	 */
+	Entry remove(Stage stage) {
+		List<Entry> sameDate = entries(byDate.get(stage.date()));
+		Entry entry = null;
+
+		for (int i = 0; entry == null && i < sameDate.size(); i++) {
+			if (sameDate.get(i).stage().equals(stage)) {
+				entry = sameDate.get(i);
+			}
+		}
+
+		if (entry != null) {
+			remove(entry);
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Unregisters a registered stage given its entry, without searching for it. The
+	 * entry is left in its buckets as a tombstone.
+	 * @param entry The entry of the deleted stage.
+	 */
+	void remove(Entry entry) {
+		Stage stage = entry.stage();
+
+		entry.removed = true;
+		removeFrom(byWinnerName, stage.winner().name());
+		bySeq.set((int) entry.seq(), null);
+		size--;
+		for (String rider: stage.podium()) {
+			CompressedBitmap podiums = byPodiumMember.get(rider);
+			// Null if the rider is named twice in the podium and was already removed
+			if (podiums != null) {
+				podiums.remove((int) entry.seq());
+				if (podiums.isEmpty()) {
+					byPodiumMember.remove(rider);
+				}
+			}
+		}
+		removeFrom(byDate, stage.date());
+		removeFrom(byNumber, stage.stageNo());
+		removeFrom(byType, stage.type());
+	}
+
+	/**
+	 * Drops the tombstones of every bucket and renumbers the registered stages from 0,
+	 * keeping their order. Entries are renumbered in place, so they keep being valid.
+	 */
+	void compact() {
+		List<Entry> live = new ArrayList<>(size);
+
+		for (Entry e: bySeq) {
+			if (e != null) {
+				e.seq = live.size();
+				live.add(e);
+			}
+		}
+		bySeq = live;
+		nextSeq = live.size();
+
+		byPodiumMember = new HashMap<>();
+		for (Entry e: live) {
+			for (String rider: e.stage().podium()) {
+				byPodiumMember.computeIfAbsent(rider, k->new CompressedBitmap()).add((int) e.seq());
+			}
+		}
+
+		byWinnerName.values().forEach(Bucket::entries);
+		byDate.values().forEach(Bucket::entries);
+		byType.values().forEach(Bucket::entries);
+		byNumber.values().forEach(Bucket::entries);
+	}
+
+	/**
+	 * Checks if a rider is in the podium of any stage.
+	 * @param riderName Name of the rider.
+	 * @return true/false depending on whether there is a stage with the rider in the podium or not.
+	 */
+	boolean hasPodiumMember(String riderName) {
+		return byPodiumMember.containsKey(riderName);
+	}
+
+	/**
+	 * Gets the stages with a rider in the podium.
+	 * @param riderName Name of the rider.
+	 * @return The sequence numbers of the stages (empty if none). It must not be modified.
+	 */
+	CompressedBitmap podiumsOf(String riderName) {
+		return byPodiumMember.getOrDefault(riderName, EMPTY);
+	}
+
+	/**
+	 * Gets the stages won by a rider.
+	 * @param riderName Name of the rider.
+	 * @return A new bitmap with the sequence numbers of the stages.
+	 */
+	CompressedBitmap winsOf(String riderName) {
+		CompressedBitmap result = new CompressedBitmap();
+
+		for (Entry e: wonBy(riderName)) {
+			result.add((int) e.seq());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets the stages with some sequence numbers.
+	 * @param seqs The sequence numbers of registered stages.
+	 * @return A new list with the stages, in container order.
+	 */
+	List<Stage> stagesAt(CompressedBitmap seqs) {
+		List<Stage> result = new ArrayList<>(seqs.cardinality());
+
+		seqs.forEach(seq->result.add(bySeq.get(seq).stage()));
+
+		return result;
+	}
+
+	/**
+	 * Gets the entries of the stages with some sequence numbers.
+	 * @param seqs The sequence numbers of registered stages.
+	 * @return A new list with the entries, in container order.
+	 */
+	List<Entry> entriesAt(CompressedBitmap seqs) {
+		List<Entry> result = new ArrayList<>(seqs.cardinality());
+
+		seqs.forEach(seq->result.add(bySeq.get(seq)));
+
+		return result;
+	}
+
+	/**
+	 * Gets the entries of all the registered stages.
+	 * @return A new list with the entries, in container order.
+	 */
+	List<Entry> entries() {
+		List<Entry> result = new ArrayList<>(size);
+
+		for (Entry e: bySeq) {
+			if (e != null) {
+				result.add(e);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets the number of registered stages.
+	 * @return The number of stages.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the stages won by a rider, in container order.
+	 * @param riderName Name of the rider.
+	 * @return The entries of the stages won by the rider (empty if none).
+	 */
+	List<Entry> wonBy(String riderName) {
+		return entries(byWinnerName.get(riderName));
+	}
+
+	/**
+	 * Gets the stages that took place before a date, in container order.
+	 * @param date The date used for the filtering.
+	 * @return A list with the stages before the date.
+	 */
+	List<Stage> before(LocalDate date) {
+		return inContainerOrder(byDate.headMap(date, false).values());
+	}
+
+	/**
+	 * Gets the stages that took place in a date range, in container order. Only the
+	 * date buckets in the range are visited.
+	 * @param from First date of the range (inclusive).
+	 * @param to End of the range (exclusive).
+	 * @return A list with the stages in the range.
+	 */
+	List<Stage> between(LocalDate from, LocalDate to) {
+		return from.isBefore(to) ? inContainerOrder(byDate.subMap(from, true, to, false).values()) : new ArrayList<>();
+	}
+
+	/**
+	 * Gets the entries of the stages that took place in a date range.
+	 * @param from First date of the range (inclusive).
+	 * @param to End of the range (exclusive).
+	 * @return A new list with the entries in the range, sorted by date (not in container order).
+	 */
+	List<Entry> entriesBetween(LocalDate from, LocalDate to) {
+		List<Entry> result = new ArrayList<>();
+
+		if (from.isBefore(to)) {
+			for (Bucket bucket: byDate.subMap(from, true, to, false).values()) {
+				result.addAll(bucket.entries());
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Counts the stages that took place in a date range, visiting only its date buckets.
+	 * @param from First date of the range (inclusive).
+	 * @param to End of the range (exclusive).
+	 * @return The number of stages in the range.
+	 */
+	int countBetween(LocalDate from, LocalDate to) {
+		int result = 0;
+
+		if (from.isBefore(to)) {
+			for (Bucket bucket: byDate.subMap(from, true, to, false).values()) {
+				result += bucket.size();
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Counts the stages that took place before several dates, with a single walk over
+	 * the date index.
+	 * @param dates The dates.
+	 * @return A new map associating every date to the number of stages before it.
+	 */
+	Map<LocalDate, Integer> countBefore(Collection<LocalDate> dates) {
+		Map<LocalDate, Integer> result = new HashMap<>();
+		NavigableMap<LocalDate, Bucket> remaining = byDate;
+		int count = 0;
+
+		for (LocalDate date: new TreeSet<>(dates)) {
+			// Buckets before the date that were not counted for the previous dates
+			for (Bucket bucket: remaining.headMap(date, false).values()) {
+				count += bucket.size();
+			}
+			remaining = remaining.tailMap(date, true);
+			result.put(date, count);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets the stages of a type, sorted by distance (ties in container order).
+	 * @param type The stage type.
+	 * @return The entries of the stages of that type (empty if none).
+	 */
+	List<Entry> ofType(StageType type) {
+		return entries(byType.get(type));
+	}
+
+	/**
+	 * Gets the stages of a type in a distance range, found by binary search on the
+	 * by-type bucket.
+	 * @param type The stage type.
+	 * @param minDistance Minimum distance (inclusive).
+	 * @param maxDistance Maximum distance (inclusive).
+	 * @return A view of the entries of those stages, sorted by distance (ties in container order).
+	 */
+	List<Entry> ofType(StageType type, float minDistance, float maxDistance) {
+		List<Entry> ofType = ofType(type);
+		int from = lowerBound(ofType, minDistance);
+
+		return ofType.subList(from, Math.max(from, upperBound(ofType, maxDistance)));
+	}
+
+	/**
+	 * Gets the stages grouped by stage number.
+	 * @return A new map associating every stage number to its stages, in container order.
+	 */
+	Map<Integer, List<Stage>> byNumber() {
+		Map<Integer, List<Stage>> result = new HashMap<>();
+
+		for (Map.Entry<Integer, Bucket> bucket: byNumber.entrySet()) {
+			result.put(bucket.getKey(), stagesOf(bucket.getValue().entries()));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Extracts the stages of a list of entries.
+	 * @param entries The entries.
+	 * @return A new list with the stages, in the same order.
+	 */
+	static List<Stage> stagesOf(List<Entry> entries) {
+		List<Stage> result = new ArrayList<>(entries.size());
+
+		for (Entry e: entries) {
+			result.add(e.stage());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets the entries of a bucket that may not exist.
+	 * @param bucket The bucket, or null.
+	 * @return The entries of the bucket (empty if null). The list must not be modified.
+	 */
+	private static List<Entry> entries(Bucket bucket) {
+		return bucket == null ? List.of() : bucket.entries();
+	}
+
+	/**
+	 * Merges some buckets and sorts their stages by sequence number.
+	 * @param buckets The buckets to merge.
+	 * @return A new list with the stages, in container order.
+	 */
+	private static List<Stage> inContainerOrder(Collection<Bucket> buckets) {
+		List<Entry> entries = new ArrayList<>();
+
+		for (Bucket bucket: buckets) {
+			entries.addAll(bucket.entries());
+		}
+		entries.sort(BY_SEQ);
+
+		return stagesOf(entries);
+	}
+
+	/**
+	 * Finds the position after the last entry whose distance is lower than or equal to a distance.
+	 * @param entries Entries sorted by distance.
+	 * @param distance The distance to look for.
+	 * @return The position after the last entry that is not longer than the distance.
+	 */
+	private static int upperBound(List<Entry> entries, float distance) {
+		int low = 0;
+		int high = entries.size();
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (entries.get(middle).stage().distance() <= distance) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Finds the position of the first entry whose distance is greater than or equal to a distance.
+	 * @param entries Entries sorted by distance.
+	 * @param distance The distance to look for.
+	 * @return The position of the first entry that is not shorter than the distance.
+	 */
+	private static int lowerBound(List<Entry> entries, float distance) {
+		int low = 0;
+		int high = entries.size();
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (entries.get(middle).stage().distance() < distance) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Counts a removal in the bucket of a key, and drops the bucket when it has no
+	 * stages left.
+	 * @param index The index.
+	 * @param key The key of the removed stage.
+	 */
+	private static <K> void removeFrom(Map<K, Bucket> index, K key) {
+		Bucket bucket = index.get(key);
+
+		bucket.remove();
+		if (bucket.size() == 0) {
+			index.remove(key);
+		}
+	}
+}
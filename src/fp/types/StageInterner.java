@@ -0,0 +1,89 @@
+package fp.types;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fp.common.Rider;
+
+/**
+ * Dictionary of canonical objects used while loading stages. Locations, teams,
+ * rider names and riders repeat in many stages; interning them makes all the
+ * stages share a single copy of each one, and lets equality checks between them
+ * succeed on the identity comparison. It can be used from several threads at once.
+ * @author Guillermo R.N.
+ */
+public class StageInterner {
+	private Map<String, String> strings;
+	private Map<Rider, Rider> riders;
+
+	/**
+	 * First constructor. Creates an empty dictionary.
+	 */
+	public StageInterner() {
+		this.strings = new ConcurrentHashMap<>();
+		this.riders = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Gets the canonical copy of a string.
+	 * @param s The string to intern.
+	 * @return The string in the dictionary that is equal to s.
+	 */
+	public String intern(String s) {
+		String result = strings.putIfAbsent(s, s);
+		return result == null ? s : result;
+	}
+
+	/**
+	 * Gets the canonical copy of a rider, whose name and team are interned as well.
+	 * @param rider The rider to intern.
+	 * @return The rider in the dictionary that is equal to rider.
+	 */
+	public Rider intern(Rider rider) {
+		Rider result = riders.get(rider);
+
+		if (result == null) {
+			Rider canonical = new Rider(intern(rider.name()), intern(rider.team()), rider.country());
+			result = riders.putIfAbsent(canonical, canonical);
+			result = result == null ? canonical : result;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Creates a podium whose rider names are interned.
+	 * @param podium The podium to intern.
+	 * @return An immutable list with the canonical copies of the names.
+	 */
+	public List<String> intern(List<String> podium) {
+		String[] result = new String[podium.size()];
+
+		for (int i = 0; i < result.length; i++) {
+			result[i] = intern(podium.get(i));
+		}
+
+		return List.of(result);
+	}
+
+	/**
+	 * Gets the number of distinct strings in the dictionary.
+	 * @return The number of strings.
+	 */
+	public int getNumberStrings() {
+		return strings.size();
+	}
+
+	/**
+	 * Gets the number of distinct riders in the dictionary.
+	 * @return The number of riders.
+	 */
+	public int getNumberRiders() {
+		return riders.size();
+	}
+
+	public String toString() {
+		return "StageInterner [strings=" + strings.size() + ", riders=" + riders.size() + "]";
+	}
+}
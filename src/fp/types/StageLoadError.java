@@ -0,0 +1,19 @@
+package fp.types;
+
+/**
+ * Record to hold an invalid line found while reading a .csv file in lenient mode.
+ * @author Guillermo R.N.
+ */
+
+/*
+ * Properties:
+ * -line (Integer, 1 for the header)
+ * -column (Integer, from 1 to 10, or 0 if the line does not have 10 cells)
+ * -reason (String)
+ */
+
+public record StageLoadError(Integer line, Integer column, String reason) {
+	public String toString() {
+		return "Line " + line + (column > 0 ? ", column " + column : "") + ": " + reason;
+	}
+}
@@ -0,0 +1,30 @@
+package fp.types;
+
+import java.util.List;
+
+/**
+ * Record to hold the result of reading a .csv file in lenient mode: the valid
+ * stages and the invalid lines that were skipped.
+ * @author Guillermo R.N.
+ */
+
+/*
+ * Properties:
+ * -stages (Stages)
+ * -errors (List<StageLoadError>, in file order)
+ * -hasErrors (Boolean, derived)
+ */
+
+public record StageLoadReport(Stages stages, List<StageLoadError> errors) {
+	public StageLoadReport {
+		errors = List.copyOf(errors);
+	}
+
+	/**
+	 * Checks if any line was skipped (derived property).
+	 * @return true if the file had invalid lines.
+	 */
+	public Boolean hasErrors() {
+		return !errors.isEmpty();
+	}
+}
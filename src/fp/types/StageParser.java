@@ -0,0 +1,483 @@
+package fp.types;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.List;
+
+import fp.common.Rider;
+import fp.common.RiderCountry;
+import fp.utils.Checkers;
+
+/**
+ * Single-pass tokenizer for the stage .csv format.
+ * Cells are located by index and numbers and dates are parsed straight from the
+ * characters of the line, so the only strings created are the text cells themselves.
+ * @author Guillermo R.N.
+ */
+public final class StageParser {
+	private static final int CELLS = 10;
+	private static final String CELL_COUNT_ERROR = "Number of cells per line must be equal to 10.";
+	private static final String STAGE_NO_ERROR = "Stage number must be greater than 0.";
+	private static final String DATE_ERROR = "Date must be before current date.";
+	private static final String DISTANCE_ERROR = "Distance must be greater than or equal to 0.0f.";
+	private static final int MAX_FAST_MANTISSA = 1 << 24;
+	private static final float[] POWERS_OF_TEN = {
+		1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+	};
+	private static final StageType[] STAGE_TYPES = StageType.values();
+	private static final RiderCountry[] COUNTRIES_BY_CODE = buildCountryTable();
+
+	private StageParser() {
+	}
+
+	/**
+	 * Parse a .csv line.
+	 * @param line The line to parse.
+	 * @return A Stage object resulting from parsing the line.
+	 */
+	public static Stage parseLine(String line) {
+		return parseLine(line, 0, line.length());
+	}
+
+	/**
+	 * Parse a .csv line, sharing repeated names and riders through an interner.
+	 * @param line The line to parse.
+	 * @param interner Dictionary with the canonical names and riders.
+	 * @return A Stage object resulting from parsing the line.
+	 */
+	public static Stage parseLine(String line, StageInterner interner) {
+		return parseLine(line, 0, line.length(), interner);
+	}
+
+	/**
+	 * Parse a .csv line contained in a larger buffer.
+	 * @param buffer The text containing the line.
+	 * @param start Index of the first character of the line.
+	 * @param end Index after the last character of the line.
+	 * @return A Stage object resulting from parsing the line.
+	 */
+	public static Stage parseLine(String buffer, int start, int end) {
+		return parseLine(buffer, start, end, null);
+	}
+
+	/**
+	 * Parse a .csv line contained in a larger buffer, sharing repeated names and
+	 * riders through an interner.
+	 * @param buffer The text containing the line.
+	 * @param start Index of the first character of the line.
+	 * @param end Index after the last character of the line.
+	 * @param interner Dictionary with the canonical names and riders, or null to create new ones.
+	 * @return A Stage object resulting from parsing the line.
+	 */
+	public static Stage parseLine(String buffer, int start, int end, StageInterner interner) {
+		int[] bounds = new int[CELLS + 1];
+		cellBounds(buffer, start, end, bounds);
+
+		Integer stageNo = parseInt(buffer, bounds[0], bounds[1] - 1);
+		LocalDate date = parseDate(buffer, bounds[1], bounds[2] - 1);
+		Float distance = parseFloat(buffer, bounds[2], bounds[3] - 1);
+
+		String origin = parseText(buffer, bounds[3], bounds[4] - 1);
+		String destination = parseText(buffer, bounds[4], bounds[5] - 1);
+
+		StageType type = parseStageType(buffer, bounds[5], bounds[6] - 1);
+		Rider winner = new Rider(parseText(buffer, bounds[6], bounds[7] - 1),
+								parseText(buffer, bounds[7], bounds[8] - 1),
+								parseCountry(buffer, bounds[8], bounds[9] - 1));
+
+		List<String> podium = parsePodium(buffer, bounds[9], bounds[10] - 1);
+
+		if (interner != null) {
+			origin = interner.intern(origin);
+			destination = interner.intern(destination);
+			winner = interner.intern(winner);
+			podium = interner.intern(podium);
+		}
+
+		return new Stage(stageNo, date, distance, origin,
+						destination, type, podium, winner);
+	}
+
+	/**
+	 * Parse a .csv line without throwing exceptions for invalid data. Cells are
+	 * parsed one by one, and the checks of the Stage constructor are made before
+	 * creating the stage, so an invalid line is reported with the first cell that
+	 * failed.
+	 * @param buffer The text containing the line.
+	 * @param start Index of the first character of the line.
+	 * @param end Index after the last character of the line.
+	 * @param interner Dictionary with the canonical names and riders.
+	 * @param today Current date, read once for the whole load.
+	 * @param lineNumber Number of the line in its file, for the error report.
+	 * @param errors List that receives the error if the line is invalid.
+	 * @return A Stage object resulting from parsing the line, or null if the line is invalid.
+	 */
+	static Stage parseLine(String buffer, int start, int end, StageInterner interner,
+							LocalDate today, int lineNumber, List<StageLoadError> errors) {
+		int[] bounds = new int[CELLS + 1];
+		Stage result = null;
+		int cell = 0;
+
+		if (locateCells(buffer, start, end, bounds) != CELLS) {
+			errors.add(new StageLoadError(lineNumber, 0, CELL_COUNT_ERROR));
+		} else {
+			try {
+				Integer stageNo = parseInt(buffer, bounds[0], bounds[1] - 1);
+				String error = stageNo > 0 ? null : STAGE_NO_ERROR;
+				LocalDate date = null;
+				Float distance = null;
+
+				if (error == null) {
+					cell = 1;
+					date = parseDate(buffer, bounds[1], bounds[2] - 1);
+					error = date.isBefore(today) ? null : DATE_ERROR;
+				}
+				if (error == null) {
+					cell = 2;
+					distance = parseFloat(buffer, bounds[2], bounds[3] - 1);
+					error = distance >= 0.0f ? null : DISTANCE_ERROR;
+				}
+
+				if (error != null) {
+					errors.add(new StageLoadError(lineNumber, cell + 1, error));
+				} else {
+					cell = 3;
+					String origin = interner.intern(parseText(buffer, bounds[3], bounds[4] - 1));
+					cell = 4;
+					String destination = interner.intern(parseText(buffer, bounds[4], bounds[5] - 1));
+					cell = 5;
+					StageType type = parseStageType(buffer, bounds[5], bounds[6] - 1);
+					cell = 8;
+					RiderCountry country = parseCountry(buffer, bounds[8], bounds[9] - 1);
+					Rider winner = interner.intern(new Rider(parseText(buffer, bounds[6], bounds[7] - 1),
+															parseText(buffer, bounds[7], bounds[8] - 1), country));
+					cell = 9;
+					List<String> podium = interner.intern(parsePodium(buffer, bounds[9], bounds[10] - 1));
+
+					result = new Stage(stageNo, date, distance, origin, destination, type, podium, winner);
+				}
+			} catch (IllegalArgumentException | DateTimeException e) {
+				errors.add(new StageLoadError(lineNumber, cell + 1, e.getMessage()));
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Locates the cells of a line. After the call, cell i spans from bounds[i]
+	 * up to bounds[i + 1] - 1 (the position of its trailing comma).
+	 * @param buffer The text containing the line.
+	 * @param start Index of the first character of the line.
+	 * @param end Index after the last character of the line.
+	 * @param bounds Array of length 11 that receives the cell boundaries.
+	 */
+	static void cellBounds(String buffer, int start, int end, int[] bounds) {
+		Checkers.check(CELL_COUNT_ERROR, locateCells(buffer, start, end, bounds) == CELLS);
+	}
+
+	/**
+	 * Locates the cells of a line without checking their number.
+	 * @param buffer The text containing the line.
+	 * @param start Index of the first character of the line.
+	 * @param end Index after the last character of the line.
+	 * @param bounds Array of length 11 that receives the cell boundaries.
+	 * @return The number of cells of the line, or 11 if it has more than 10.
+	 */
+	static int locateCells(String buffer, int start, int end, int[] bounds) {
+		int cell = 0;
+		bounds[0] = start;
+
+		for (int i = start; i < end; i++) {
+			if (buffer.charAt(i) == ',') {
+				cell++;
+				if (cell == CELLS) {
+					break;
+				}
+				bounds[cell] = i + 1;
+			}
+		}
+
+		bounds[CELLS] = end + 1;
+		return cell + 1;
+	}
+
+	/**
+	 * Parses an integer cell, ignoring surrounding whitespace.
+	 * @param buffer The text containing the cell.
+	 * @param start Index of the first character of the cell.
+	 * @param end Index after the last character of the cell.
+	 * @return The parsed value.
+	 */
+	static int parseInt(String buffer, int start, int end) {
+		start = skipLeading(buffer, start, end);
+		end = skipTrailing(buffer, start, end);
+
+		boolean negative = start < end && buffer.charAt(start) == '-';
+		int i = (negative || (start < end && buffer.charAt(start) == '+')) ? start + 1 : start;
+		long result = 0;
+
+		if (i == end || end - i > 10) {
+			throw new NumberFormatException("For input string: \"" + buffer.substring(start, end) + "\"");
+		}
+
+		for (; i < end; i++) {
+			int digit = buffer.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				throw new NumberFormatException("For input string: \"" + buffer.substring(start, end) + "\"");
+			}
+			result = result * 10 + digit;
+		}
+
+		result = negative ? -result : result;
+		if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) {
+			throw new NumberFormatException("For input string: \"" + buffer.substring(start, end) + "\"");
+		}
+
+		return (int) result;
+	}
+
+	/**
+	 * Parses a decimal cell, ignoring surrounding whitespace. Plain decimals with up to
+	 * seven significant digits are converted exactly with a single float division;
+	 * anything else falls back to Float.parseFloat.
+	 * @param buffer The text containing the cell.
+	 * @param start Index of the first character of the cell.
+	 * @param end Index after the last character of the cell.
+	 * @return The parsed value.
+	 */
+	static float parseFloat(String buffer, int start, int end) {
+		start = skipLeading(buffer, start, end);
+		end = skipTrailing(buffer, start, end);
+
+		boolean negative = start < end && buffer.charAt(start) == '-';
+		int i = (negative || (start < end && buffer.charAt(start) == '+')) ? start + 1 : start;
+		int mantissa = 0;
+		int decimals = -1;
+		boolean digits = false;
+
+		for (; i < end; i++) {
+			char c = buffer.charAt(i);
+			if (c == '.' && decimals < 0) {
+				decimals = 0;
+			} else if (c >= '0' && c <= '9' && mantissa < MAX_FAST_MANTISSA) {
+				mantissa = mantissa * 10 + (c - '0');
+				digits = true;
+				if (decimals >= 0) {
+					decimals++;
+				}
+			} else {
+				break;
+			}
+		}
+
+		if (i < end || !digits || mantissa > MAX_FAST_MANTISSA || decimals >= POWERS_OF_TEN.length) {
+			return Float.parseFloat(buffer.substring(start, end));
+		}
+
+		float result = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+		return negative ? -result : result;
+	}
+
+	/**
+	 * Parses a date cell in the ISO format (yyyy-MM-dd), ignoring surrounding whitespace.
+	 * @param buffer The text containing the cell.
+	 * @param start Index of the first character of the cell.
+	 * @param end Index after the last character of the cell.
+	 * @return The parsed date.
+	 */
+	static LocalDate parseDate(String buffer, int start, int end) {
+		start = skipLeading(buffer, start, end);
+		end = skipTrailing(buffer, start, end);
+
+		if (end - start != 10 || buffer.charAt(start + 4) != '-' || buffer.charAt(start + 7) != '-') {
+			throw new IllegalArgumentException("Date must follow the format yyyy-MM-dd: "
+												+ buffer.substring(start, end));
+		}
+
+		return LocalDate.of(digits(buffer, start, start + 4),
+							digits(buffer, start + 5, start + 7),
+							digits(buffer, start + 8, start + 10));
+	}
+
+	/**
+	 * Parses a text cell, removing surrounding whitespace.
+	 * @param buffer The text containing the cell.
+	 * @param start Index of the first character of the cell.
+	 * @param end Index after the last character of the cell.
+	 * @return The text of the cell.
+	 */
+	static String parseText(String buffer, int start, int end) {
+		start = skipLeading(buffer, start, end);
+		end = skipTrailing(buffer, start, end);
+
+		return buffer.substring(start, end);
+	}
+
+	/**
+	 * Parses a stage type cell without creating a string for it.
+	 * @param buffer The text containing the cell.
+	 * @param start Index of the first character of the cell.
+	 * @param end Index after the last character of the cell.
+	 * @return The parsed stage type.
+	 */
+	static StageType parseStageType(String buffer, int start, int end) {
+		start = skipLeading(buffer, start, end);
+		end = skipTrailing(buffer, start, end);
+
+		for (StageType type: STAGE_TYPES) {
+			String name = type.name();
+			if (name.length() == end - start && buffer.regionMatches(start, name, 0, name.length())) {
+				return type;
+			}
+		}
+
+		throw new IllegalArgumentException("No enum constant " + StageType.class.getCanonicalName()
+											+ "." + buffer.substring(start, end));
+	}
+
+	/**
+	 * Parses a country cell by looking its three-letter code up in a table.
+	 * @param buffer The text containing the cell.
+	 * @param start Index of the first character of the cell.
+	 * @param end Index after the last character of the cell.
+	 * @return The parsed country.
+	 */
+	static RiderCountry parseCountry(String buffer, int start, int end) {
+		start = skipLeading(buffer, start, end);
+		end = skipTrailing(buffer, start, end);
+
+		int code = end - start == 3 ? countryCode(buffer.charAt(start), buffer.charAt(start + 1),
+												buffer.charAt(start + 2)) : -1;
+		RiderCountry result = code >= 0 ? COUNTRIES_BY_CODE[code] : null;
+
+		if (result == null) {
+			throw new IllegalArgumentException("No enum constant " + RiderCountry.class.getCanonicalName()
+												+ "." + buffer.substring(start, end));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Parses a podium cell, whose riders are separated by "; ".
+	 * @param buffer The text containing the cell.
+	 * @param start Index of the first character of the cell.
+	 * @param end Index after the last character of the cell.
+	 * @return An immutable list with the riders in the podium.
+	 */
+	static List<String> parsePodium(String buffer, int start, int end) {
+		start = skipLeading(buffer, start, end);
+		end = skipTrailing(buffer, start, end);
+
+		String[] riders = new String[3];
+		int count = 0;
+		int from = start;
+
+		for (int i = start; i < end - 1 && count < 3; i++) {
+			if (buffer.charAt(i) == ';' && buffer.charAt(i + 1) == ' ') {
+				riders[count++] = buffer.substring(from, i);
+				from = i + 2;
+				i++;
+			}
+		}
+
+		Checkers.check("Number of components of the podium must be equal to 3.",
+					count == 2 && from < end);
+		riders[2] = buffer.substring(from, end);
+
+		return List.of(riders);
+	}
+
+	/**
+	 * Compares a text cell, without surrounding whitespace, with a string without
+	 * creating a string for the cell.
+	 * @param buffer The text containing the cell.
+	 * @param start Index of the first character of the cell.
+	 * @param end Index after the last character of the cell.
+	 * @param text The string to compare with.
+	 * @return true if the cell is equal to the string.
+	 */
+	static boolean textEquals(String buffer, int start, int end, String text) {
+		start = skipLeading(buffer, start, end);
+		end = skipTrailing(buffer, start, end);
+
+		return end - start == text.length() && buffer.regionMatches(start, text, 0, text.length());
+	}
+
+	/**
+	 * Checks if a podium cell contains a rider without creating strings for its riders.
+	 * Riders are separated by "; ", as in parsePodium.
+	 * @param buffer The text containing the cell.
+	 * @param start Index of the first character of the cell.
+	 * @param end Index after the last character of the cell.
+	 * @param rider Name of the rider.
+	 * @return true if the rider is in the podium.
+	 */
+	static boolean podiumContains(String buffer, int start, int end, String rider) {
+		start = skipLeading(buffer, start, end);
+		end = skipTrailing(buffer, start, end);
+		boolean result = false;
+		int from = start;
+
+		for (int i = start; i <= end && !result; i++) {
+			if (i == end || (i < end - 1 && buffer.charAt(i) == ';' && buffer.charAt(i + 1) == ' ')) {
+				result = i - from == rider.length() && buffer.regionMatches(from, rider, 0, rider.length());
+				from = i + 2;
+				i++;
+			}
+		}
+
+		return result;
+	}
+
+	private static int digits(String buffer, int start, int end) {
+		int result = 0;
+
+		for (int i = start; i < end; i++) {
+			int digit = buffer.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				throw new IllegalArgumentException("Date must follow the format yyyy-MM-dd: "
+													+ buffer.substring(start, end));
+			}
+			result = result * 10 + digit;
+		}
+
+		return result;
+	}
+
+	private static int skipLeading(String buffer, int start, int end) {
+		while (start < end && buffer.charAt(start) <= ' ') {
+			start++;
+		}
+		return start;
+	}
+
+	private static int skipTrailing(String buffer, int start, int end) {
+		while (end > start && buffer.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		return end;
+	}
+
+	private static int countryCode(char a, char b, char c) {
+		int result = -1;
+
+		if (a >= 'A' && a <= 'Z' && b >= 'A' && b <= 'Z' && c >= 'A' && c <= 'Z') {
+			result = ((a - 'A') * 26 + (b - 'A')) * 26 + (c - 'A');
+		}
+
+		return result;
+	}
+
+	private static RiderCountry[] buildCountryTable() {
+		RiderCountry[] result = new RiderCountry[26 * 26 * 26];
+
+		for (RiderCountry country: RiderCountry.values()) {
+			String name = country.name();
+			result[countryCode(name.charAt(0), name.charAt(1), name.charAt(2))] = country;
+		}
+
+		return result;
+	}
+}
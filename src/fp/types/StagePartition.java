@@ -0,0 +1,90 @@
+package fp.types;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import fp.common.Rider;
+
+/**
+ * Aggregates of the stages of a partition (a year) of a Stages container, updated on
+ * every insertion and deletion.
+ * @author Guillermo R.N.
+ */
+class StagePartition {
+	private int count;
+	private double distanceSum;
+	private int[] typeCounts;
+	private Map<Rider, Integer> wins;
+
+	/**
+	 * Constructor. Creates the aggregates of an empty partition.
+	 */
+	StagePartition() {
+		this.count = 0;
+		this.distanceSum = 0.0;
+		this.typeCounts = new int[StageType.values().length];
+		this.wins = new HashMap<>();
+	}
+
+	/**
+	 * Updates the aggregates with an added stage.
+	 * @param stage The added stage.
+	 */
+	void add(Stage stage) {
+		count++;
+		distanceSum += stage.distance();
+		typeCounts[stage.type().ordinal()]++;
+		wins.merge(stage.winner(), 1, Integer::sum);
+	}
+
+	/**
+	 * Updates the aggregates with a deleted stage.
+	 * @param stage The deleted stage.
+	 */
+	void remove(Stage stage) {
+		count--;
+		distanceSum -= stage.distance();
+		typeCounts[stage.type().ordinal()]--;
+		if (wins.merge(stage.winner(), -1, Integer::sum) == 0) {
+			wins.remove(stage.winner());
+		}
+	}
+
+	/**
+	 * Adds the aggregates of another partition to these ones.
+	 * @param other The other partition.
+	 */
+	void addAll(StagePartition other) {
+		count += other.count;
+		distanceSum += other.distanceSum;
+		for (int i = 0; i < typeCounts.length; i++) {
+			typeCounts[i] += other.typeCounts[i];
+		}
+		other.wins.forEach((rider, n)->wins.merge(rider, n, Integer::sum));
+	}
+
+	/**
+	 * Checks if the partition has no stages.
+	 * @return true if the partition is empty.
+	 */
+	boolean isEmpty() {
+		return count == 0;
+	}
+
+	/**
+	 * Gets the current aggregates of the partition.
+	 * @return A new StageStatistics object.
+	 */
+	StageStatistics toStatistics() {
+		Map<StageType, Integer> types = new EnumMap<>(StageType.class);
+
+		for (StageType type: StageType.values()) {
+			if (typeCounts[type.ordinal()] > 0) {
+				types.put(type, typeCounts[type.ordinal()]);
+			}
+		}
+
+		return new StageStatistics(count, distanceSum, types, wins);
+	}
+}
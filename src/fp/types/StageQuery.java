@@ -0,0 +1,452 @@
+package fp.types;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+import fp.common.RiderCountry;
+import fp.utils.Checkers;
+import fp.utils.CompressedBitmap;
+import fp.utils.TopN;
+
+/**
+ * Query over the stages of a Stages container, built by combining filters, an order
+ * and a limit, and obtained with Stages.query().
+ *
+ * When the query is run, a planner estimates how many stages every applicable index
+ * would return (podium members, winner, stage type with its distance range, date range)
+ * and reads the smallest set. The filters that the chosen index does not answer are
+ * tested on its stages in the same pass that collects, counts or ranks the results,
+ * so the container is visited once and only through the chosen index. explain()
+ * shows the plan.
+ *
+ * Results are in container order unless an order is given; ties of the order are also
+ * in container order.
+ *
+ * @author Guillermo R.N.
+ */
+public class StageQuery {
+	private static final Comparator<StageIndex.Entry> BY_SEQ = Comparator.comparingLong(StageIndex.Entry::seq);
+
+	/**
+	 * Filters of a query, in the order in which they are shown by explain().
+	 */
+	private enum Filter {
+		PODIUM, WINNER, TYPE, DISTANCE, DATE, COUNTRY
+	}
+
+	/**
+	 * Way of reading the candidate stages of a query.
+	 * @param description Description shown by explain().
+	 * @param size Exact number of candidate stages.
+	 * @param candidates Reads the candidate stages.
+	 * @param inContainerOrder Whether the candidates come in container order.
+	 * @param answered Filters that every candidate passes.
+	 */
+	private record Access(String description, int size, Supplier<List<StageIndex.Entry>> candidates,
+			boolean inContainerOrder, Set<Filter> answered) {
+	}
+
+	private Stages stages;
+	private List<String> podium;
+	private String winner;
+	private StageType type;
+	private Float minDistance;
+	private Float maxDistance;
+	private LocalDate from;
+	private LocalDate to;
+	private RiderCountry country;
+	private Comparator<? super Stage> order;
+	private Integer limit;
+
+	/**
+	 * Constructor. Creates a query without filters.
+	 * @param stages The queried container. The query reads its current stages every
+	 * time it is run.
+	 */
+	StageQuery(Stages stages) {
+		this.stages = stages;
+		this.podium = new ArrayList<>();
+	}
+
+	/**
+	 * Keeps the stages with a rider in the podium. It can be called several times to
+	 * require several riders.
+	 * @param riderName Name of the rider.
+	 * @return This query.
+	 */
+	public StageQuery withInPodium(String riderName) {
+		podium.add(riderName);
+		return this;
+	}
+
+	/**
+	 * Keeps the stages won by a rider.
+	 * @param riderName Name of the rider.
+	 * @return This query.
+	 */
+	public StageQuery wonBy(String riderName) {
+		winner = riderName;
+		return this;
+	}
+
+	/**
+	 * Keeps the stages of a type.
+	 * @param type The stage type.
+	 * @return This query.
+	 */
+	public StageQuery ofType(StageType type) {
+		this.type = type;
+		return this;
+	}
+
+	/**
+	 * Keeps the stages in a distance range.
+	 * @param minDistance Minimum distance (inclusive).
+	 * @param maxDistance Maximum distance (inclusive).
+	 * @return This query.
+	 */
+	public StageQuery distanceBetween(Float minDistance, Float maxDistance) {
+		Checkers.check("The minimum distance must not be greater than the maximum one.", minDistance <= maxDistance);
+		this.minDistance = minDistance;
+		this.maxDistance = maxDistance;
+		return this;
+	}
+
+	/**
+	 * Keeps the stages that took place in a date range.
+	 * @param from First date of the range (inclusive).
+	 * @param to End of the range (exclusive).
+	 * @return This query.
+	 */
+	public StageQuery between(LocalDate from, LocalDate to) {
+		Checkers.check("The first date must not be after the end of the range.", !from.isAfter(to));
+		this.from = from;
+		this.to = to;
+		return this;
+	}
+
+	/**
+	 * Keeps the stages won by a rider of a country.
+	 * @param country The country of the winner.
+	 * @return This query.
+	 */
+	public StageQuery winnerCountry(RiderCountry country) {
+		this.country = country;
+		return this;
+	}
+
+	/**
+	 * Sorts the results.
+	 * @param order Order of the results (ties in container order).
+	 * @return This query.
+	 */
+	public StageQuery orderBy(Comparator<? super Stage> order) {
+		this.order = order;
+		return this;
+	}
+
+	/**
+	 * Keeps only the first results. With an order, only that many stages are kept
+	 * while ranking; without one, the pass stops at the last result when the chosen
+	 * index reads the stages in container order.
+	 * @param limit Maximum number of results.
+	 * @return This query.
+	 */
+	public StageQuery limit(Integer limit) {
+		Checkers.check("Limit must not be negative.", limit >= 0);
+		this.limit = limit;
+		return this;
+	}
+
+	/**
+	 * Runs the query.
+	 * @return A new list with the stages that pass every filter, sorted and limited.
+	 */
+	public List<Stage> list() {
+		return StageIndex.stagesOf(run(plan()));
+	}
+
+	/**
+	 * Counts the results of the query. If the chosen index answers every filter, the
+	 * result is its number of stages and no stage is visited.
+	 * @return The number of results (at most the limit).
+	 */
+	public Integer count() {
+		Access access = plan();
+		int result;
+
+		if (access.answered().containsAll(filters())) {
+			result = access.size();
+		} else {
+			Predicate<Stage> residual = residual(access);
+			result = 0;
+			for (StageIndex.Entry e: access.candidates().get()) {
+				if (residual.test(e.stage())) {
+					result++;
+				}
+			}
+		}
+
+		return limit == null ? result : Math.min(result, limit);
+	}
+
+	/**
+	 * Aggregates the results of the query.
+	 * @param collector The aggregation, e.g. Collectors.averagingDouble(Stage::distance).
+	 * @return The result of the collector over the sorted and limited results.
+	 */
+	public <R> R collect(Collector<? super Stage, ?, R> collector) {
+		return list().stream().collect(collector);
+	}
+
+	/**
+	 * Groups and aggregates the results of the query.
+	 * @param key Function that gives the group of a stage.
+	 * @param downstream The aggregation of every group, e.g. Collectors.counting().
+	 * @return A map associating every group to the aggregate of its stages.
+	 */
+	public <K, R> Map<K, R> groupBy(Function<? super Stage, ? extends K> key,
+			Collector<? super Stage, ?, R> downstream) {
+		return collect(Collectors.groupingBy(key, downstream));
+	}
+
+	/**
+	 * Describes how the query would be run: the chosen index and its number of stages,
+	 * the rejected ones, the filters tested on every candidate, the order and the limit.
+	 * @return The plan of the query, one step per line.
+	 */
+	public String explain() {
+		StageIndex index = stages.index();
+		List<Access> accesses = accesses();
+		Access access = cheapest(accesses);
+		Set<Filter> residual = filters();
+		residual.removeAll(access.answered());
+
+		StringBuilder result = new StringBuilder();
+		result.append("Access: ").append(access.description())
+				.append(" (").append(access.size()).append(" of ").append(index.size()).append(" stages)\n");
+		for (Access a: accesses) {
+			if (a != access) {
+				result.append("Rejected: ").append(a.description()).append(" (").append(a.size()).append(" stages)\n");
+			}
+		}
+		result.append("Filter: ").append(residual.isEmpty() ? "none" : describe(residual)).append("\n");
+		if (order != null) {
+			result.append("Order: given order, ").append(limit == null ? "sorting every result"
+					: "keeping the first " + limit + " while scanning").append("\n");
+		} else {
+			result.append("Order: container order").append(access.inContainerOrder() ? "" : ", sorting the results")
+					.append("\n");
+		}
+		result.append("Limit: ").append(limit == null ? "none" : limit);
+
+		return result.toString();
+	}
+
+	public String toString() {
+		return "StageQuery [" + (filters().isEmpty() ? "all stages" : describe(filters()))
+				+ (order == null ? "" : ", ordered") + (limit == null ? "" : ", limit " + limit) + "]";
+	}
+
+	/**
+	 * Chooses the access with the fewest candidates.
+	 * @return The plan of the query.
+	 */
+	private Access plan() {
+		return cheapest(accesses());
+	}
+
+	/**
+	 * Runs a plan in a single pass over its candidates.
+	 * @param access The chosen access.
+	 * @return The entries of the results, sorted and limited.
+	 */
+	private List<StageIndex.Entry> run(Access access) {
+		Predicate<Stage> residual = residual(access);
+		List<StageIndex.Entry> result;
+
+		if (order != null && limit != null) {
+			TopN<StageIndex.Entry> top = new TopN<>(limit, ranking());
+			for (StageIndex.Entry e: access.candidates().get()) {
+				if (residual.test(e.stage())) {
+					top.add(e);
+				}
+			}
+			result = top.toList();
+		} else {
+			boolean stopAtLimit = order == null && limit != null && access.inContainerOrder();
+			result = new ArrayList<>();
+			for (StageIndex.Entry e: access.candidates().get()) {
+				if (stopAtLimit && result.size() == limit) {
+					break;
+				}
+				if (residual.test(e.stage())) {
+					result.add(e);
+				}
+			}
+
+			if (order != null) {
+				result.sort(ranking());
+			} else if (!access.inContainerOrder()) {
+				result.sort(BY_SEQ);
+			}
+			if (limit != null && result.size() > limit) {
+				result = result.subList(0, limit);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets the ways of reading the candidates of the query: every index that answers a
+	 * filter, and a full scan.
+	 * @return The accesses.
+	 */
+	private List<Access> accesses() {
+		StageIndex index = stages.index();
+		List<Access> result = new ArrayList<>();
+
+		if (!podium.isEmpty()) {
+			CompressedBitmap seqs = index.podiumsOf(podium.get(0));
+			for (String rider: podium.subList(1, podium.size())) {
+				seqs = seqs.and(index.podiumsOf(rider));
+			}
+			CompressedBitmap members = seqs;
+			result.add(new Access("podium index " + podium, members.cardinality(),
+					()->index.entriesAt(members), true, EnumSet.of(Filter.PODIUM)));
+		}
+		if (winner != null) {
+			List<StageIndex.Entry> won = index.wonBy(winner);
+			result.add(new Access("winner index \"" + winner + "\"", won.size(), ()->won, true,
+					EnumSet.of(Filter.WINNER)));
+		}
+		if (type != null) {
+			List<StageIndex.Entry> ofType = minDistance == null ? index.ofType(type)
+					: index.ofType(type, minDistance, maxDistance);
+			result.add(new Access("type index " + type + (minDistance == null ? ""
+					: ", distance range [" + minDistance + ", " + maxDistance + "]"), ofType.size(), ()->ofType, false,
+					minDistance == null ? EnumSet.of(Filter.TYPE) : EnumSet.of(Filter.TYPE, Filter.DISTANCE)));
+		}
+		if (from != null) {
+			LocalDate first = from;
+			LocalDate end = to;
+			result.add(new Access("date index [" + from + ", " + to + ")", index.countBetween(from, to),
+					()->index.entriesBetween(first, end), false, EnumSet.of(Filter.DATE)));
+		}
+		result.add(new Access("full scan", index.size(), index::entries, true, EnumSet.noneOf(Filter.class)));
+
+		return result;
+	}
+
+	/**
+	 * Chooses the access with the fewest candidates (the first one on ties, which
+	 * favours accesses in container order over the full scan).
+	 * @param accesses The accesses.
+	 * @return The chosen access.
+	 */
+	private static Access cheapest(List<Access> accesses) {
+		Access result = accesses.get(0);
+
+		for (Access a: accesses) {
+			if (a.size() < result.size()) {
+				result = a;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets the filters set in the query.
+	 * @return A new set with the filters.
+	 */
+	private Set<Filter> filters() {
+		Set<Filter> result = EnumSet.noneOf(Filter.class);
+
+		if (!podium.isEmpty()) {
+			result.add(Filter.PODIUM);
+		}
+		if (winner != null) {
+			result.add(Filter.WINNER);
+		}
+		if (type != null) {
+			result.add(Filter.TYPE);
+		}
+		if (minDistance != null) {
+			result.add(Filter.DISTANCE);
+		}
+		if (from != null) {
+			result.add(Filter.DATE);
+		}
+		if (country != null) {
+			result.add(Filter.COUNTRY);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Builds the test of the filters that an access does not answer.
+	 * @param access The chosen access.
+	 * @return A predicate that is true for the stages that pass those filters.
+	 */
+	private Predicate<Stage> residual(Access access) {
+		Predicate<Stage> result = s->true;
+
+		for (Filter f: filters()) {
+			if (!access.answered().contains(f)) {
+				result = result.and(switch (f) {
+					case PODIUM -> s->s.podium().containsAll(podium);
+					case WINNER -> s->s.winner().name().equals(winner);
+					case TYPE -> s->s.type() == type;
+					case DISTANCE -> s->s.distance() >= minDistance && s.distance() <= maxDistance;
+					case DATE -> s->!s.date().isBefore(from) && s.date().isBefore(to);
+					case COUNTRY -> s->s.winner().country() == country;
+				});
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Describes some filters of the query.
+	 * @param filters The filters.
+	 * @return The filters, separated by commas.
+	 */
+	private String describe(Set<Filter> filters) {
+		List<String> result = new ArrayList<>();
+
+		for (Filter f: filters) {
+			result.add(switch (f) {
+				case PODIUM -> "podium contains " + podium;
+				case WINNER -> "winner = \"" + winner + "\"";
+				case TYPE -> "type = " + type;
+				case DISTANCE -> "distance in [" + minDistance + ", " + maxDistance + "]";
+				case DATE -> "date in [" + from + ", " + to + ")";
+				case COUNTRY -> "winner country = " + country;
+			});
+		}
+
+		return String.join(", ", result);
+	}
+
+	/**
+	 * Gets the order of the results, with ties in container order.
+	 * @return The comparator of the entries.
+	 */
+	private Comparator<StageIndex.Entry> ranking() {
+		return Comparator.comparing(StageIndex.Entry::stage, order).thenComparing(BY_SEQ);
+	}
+}
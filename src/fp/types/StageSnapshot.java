@@ -0,0 +1,235 @@
+package fp.types;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import fp.common.Rider;
+import fp.common.RiderCountry;
+import fp.utils.Checkers;
+import fp.utils.StringDictionary;
+
+/**
+ * Compact binary format for stages, used to avoid parsing the .csv file again.
+ *
+ * A snapshot holds a header (format tag, version, names of the StageType and RiderCountry
+ * constants), a dictionary with every distinct origin, destination, rider and team
+ * name, and then one record per stage made of variable-length integers (stage number,
+ * epoch day, dictionary ids), the distance as a float and the enum ordinals as bytes.
+ * The enum names are stored so that reordering an enum does not corrupt old snapshots.
+ *
+ * @author Guillermo R.N.
+ */
+class StageSnapshot {
+	private static final int MAGIC = 0x54444653;
+	private static final int VERSION = 1;
+	// Stage number, epoch day, distance, enum ordinals, podium size and four dictionary ids
+	private static final int MIN_RECORD_BYTES = 16;
+
+	private StageSnapshot() {
+	}
+
+	/**
+	 * Writes a snapshot with some stages.
+	 * @param stages The stages to write.
+	 * @param path File path of the snapshot.
+	 * @throws IOException If the file cannot be written.
+	 */
+	static void write(Collection<Stage> stages, String path) throws IOException {
+		StringDictionary dictionary = new StringDictionary();
+		int[][] records = new int[stages.size()][];
+		int i = 0;
+
+		for (Stage s: stages) {
+			List<String> podium = s.podium();
+			int[] record = new int[4 + podium.size()];
+			record[0] = dictionary.idOf(s.origin());
+			record[1] = dictionary.idOf(s.destination());
+			record[2] = dictionary.idOf(s.winner().name());
+			record[3] = dictionary.idOf(s.winner().team());
+			for (int j = 0; j < podium.size(); j++) {
+				record[4 + j] = dictionary.idOf(podium.get(j));
+			}
+			records[i++] = record;
+		}
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(Paths.get(path)), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writeNames(out, StageType.values());
+			writeNames(out, RiderCountry.values());
+
+			writeVarInt(out, dictionary.size());
+			for (int id = 0; id < dictionary.size(); id++) {
+				writeString(out, dictionary.get(id));
+			}
+
+			writeVarInt(out, stages.size());
+			i = 0;
+			for (Stage s: stages) {
+				int[] record = records[i++];
+				writeVarInt(out, s.stageNo());
+				out.writeInt((int) s.date().toEpochDay());
+				out.writeFloat(s.distance());
+				out.writeByte(s.type().ordinal());
+				out.writeByte(s.winner().country().ordinal());
+				out.writeByte(record.length - 4);
+				for (int id: record) {
+					writeVarInt(out, id);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the stages stored in a snapshot. The file is memory-mapped and decoded
+	 * straight from the mapped buffer. Every length is checked against the bytes left
+	 * in the file before allocating anything, and any inconsistency in the data is
+	 * reported as an IOException.
+	 * @param path File path of the snapshot.
+	 * @return A list with the stages, in the order in which they were written.
+	 * @throws IOException If the file cannot be read or is not a snapshot.
+	 */
+	static List<Stage> read(String path) throws IOException {
+		ByteBuffer in;
+
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		try {
+			if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+				throw new IOException("Not a stage snapshot: " + path);
+			}
+
+			StageType[] types = readNames(in, StageType.class);
+			RiderCountry[] countries = readNames(in, RiderCountry.class);
+
+			String[] dictionary = new String[readLength(in, 1)];
+			for (int id = 0; id < dictionary.length; id++) {
+				dictionary[id] = readString(in);
+			}
+
+			int size = readLength(in, MIN_RECORD_BYTES);
+			List<Stage> result = new ArrayList<>(size);
+			StageInterner interner = new StageInterner();
+
+			for (int i = 0; i < size; i++) {
+				int stageNo = readVarInt(in);
+				LocalDate date = LocalDate.ofEpochDay(in.getInt());
+				float distance = in.getFloat();
+				StageType type = types[in.get() & 0xFF];
+				RiderCountry country = countries[in.get() & 0xFF];
+				String[] podium = new String[in.get() & 0xFF];
+				String origin = dictionary[readVarInt(in)];
+				String destination = dictionary[readVarInt(in)];
+				Rider winner = interner.intern(new Rider(dictionary[readVarInt(in)], dictionary[readVarInt(in)], country));
+				for (int j = 0; j < podium.length; j++) {
+					podium[j] = dictionary[readVarInt(in)];
+				}
+
+				result.add(new Stage(stageNo, date, distance, origin, destination,
+									type, List.of(podium), winner));
+			}
+
+			return result;
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+				| NegativeArraySizeException | DateTimeException e) {
+			throw new IOException("Truncated or corrupt stage snapshot: " + path, e);
+		}
+	}
+
+	private static void writeNames(DataOutputStream out, Enum<?>[] values) throws IOException {
+		writeVarInt(out, values.length);
+		for (Enum<?> value: values) {
+			writeString(out, value.name());
+		}
+	}
+
+	private static <E extends Enum<E>> E[] readNames(ByteBuffer in, Class<E> type) throws IOException {
+		int length = readLength(in, 1);
+		@SuppressWarnings("unchecked")
+		E[] result = (E[]) Array.newInstance(type, length);
+
+		for (int i = 0; i < length; i++) {
+			result[i] = Enum.valueOf(type, readString(in));
+		}
+
+		return result;
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer in) throws IOException {
+		int length = readLength(in, 1);
+		String result = StandardCharsets.UTF_8.decode(in.slice(in.position(), length)).toString();
+		in.position(in.position() + length);
+		return result;
+	}
+
+	/**
+	 * Writes a non-negative integer using 7 bits per byte, so small values take a single byte.
+	 * @param out Stream to write to.
+	 * @param value The value to write.
+	 * @throws IOException If the value cannot be written.
+	 */
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		Checkers.check("Value must be greater than or equal to 0.", value >= 0);
+
+		while (value >= 0x80) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	/**
+	 * Reads the number of elements that follow, checking that the rest of the file can hold them.
+	 * @param in Buffer to read from.
+	 * @param minBytes Minimum number of bytes taken by every element.
+	 * @return The number of elements.
+	 * @throws IOException If the number is negative or there are not enough bytes left.
+	 */
+	private static int readLength(ByteBuffer in, int minBytes) throws IOException {
+		int result = readVarInt(in);
+
+		if (result < 0 || (long) result * minBytes > in.remaining()) {
+			throw new IOException("Corrupt snapshot: length " + result + " with "
+									+ in.remaining() + " bytes left");
+		}
+
+		return result;
+	}
+
+	private static int readVarInt(ByteBuffer in) {
+		int result = 0;
+		int shift = 0;
+		int b;
+
+		do {
+			b = in.get() & 0xFF;
+			result |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+
+		return result;
+	}
+}
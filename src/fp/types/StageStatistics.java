@@ -0,0 +1,63 @@
+package fp.types;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import fp.common.Rider;
+
+/**
+ * Record to hold the aggregates of a set of stages, e.g. the stages of a year.
+ * Statistics of disjoint sets of stages can be combined without going back to the stages.
+ * @author Guillermo R.N.
+ */
+
+/*
+ * Properties:
+ * -numberStages (Integer)
+ * -totalDistance (Double)
+ * -stagesByType (Map<StageType, Integer>)
+ * -wins (Map<Rider, Integer>)
+ * -averageDistance (Float, derived)
+ */
+
+public record StageStatistics(Integer numberStages, Double totalDistance,
+		Map<StageType, Integer> stagesByType, Map<Rider, Integer> wins) {
+	/**
+	 * Statistics of no stages.
+	 */
+	public static final StageStatistics EMPTY = new StageStatistics(0, 0.0, Map.of(), Map.of());
+
+	public StageStatistics {
+		Map<StageType, Integer> types = new EnumMap<>(StageType.class);
+		types.putAll(stagesByType);
+		stagesByType = Collections.unmodifiableMap(types);
+		wins = Collections.unmodifiableMap(new HashMap<>(wins));
+	}
+
+	/**
+	 * Gets the average distance of the stages (derived property).
+	 * @return The average distance, or 0 if there are no stages.
+	 */
+	public Float averageDistance() {
+		return numberStages == 0 ? 0.0f : (float) (totalDistance / numberStages);
+	}
+
+	/**
+	 * Combines these statistics with those of a disjoint set of stages.
+	 * @param other The other statistics.
+	 * @return The statistics of the stages of both sets.
+	 */
+	public StageStatistics combine(StageStatistics other) {
+		Map<StageType, Integer> types = new EnumMap<>(StageType.class);
+		Map<Rider, Integer> riders = new HashMap<>(wins);
+
+		types.putAll(stagesByType);
+		other.stagesByType.forEach((type, n)->types.merge(type, n, Integer::sum));
+		other.wins.forEach((rider, n)->riders.merge(rider, n, Integer::sum));
+
+		return new StageStatistics(numberStages + other.numberStages, totalDistance + other.totalDistance,
+				types, riders);
+	}
+}
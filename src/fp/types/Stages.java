@@ -1,10 +1,15 @@
 package fp.types;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -12,24 +17,46 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import fp.common.Rider;
+import fp.common.Season;
 import fp.utils.Checkers;
+import fp.utils.LruCache;
+import fp.utils.TopN;
 
 /**
  * Container type for the Stage datatype.
  * @author Guillermo R.N.
  */
 public class Stages {
+	/**
+	 * Default minimum number of stages for a query to run in parallel.
+	 */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 50_000;
+
+	private List<StageHandle> slots;
+	private int deleted;
 	private List<Stage> stages;
+	private StageIndex index;
+	private StageAggregates aggregates;
+	private ForkJoinPool pool;
+	private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+	private LruCache<List<Object>, Object> cache;
 	
 	/**
 	 * First constructor.
 	 */
 	public Stages() {
+		this.slots = new ArrayList<>();
+		this.deleted = 0;
 		this.stages = new ArrayList<Stage>();
+		this.index = new StageIndex();
+		this.aggregates = new StageAggregates();
 	}
 	
 	/**
@@ -37,7 +64,8 @@ public class Stages {
 	 * @param stages Collection of stages that the container will bear.
 	 */
 	public Stages(Collection<Stage> stages) {
-		this.stages = new ArrayList<Stage>(stages);
+		this();
+		addStages(stages);
 	}
 	
 	/**
@@ -45,11 +73,28 @@ public class Stages {
 	 * @param stages Stream of stages that the container will bear.
 	 */
 	public Stages(Stream<Stage> stages) {
-		this.stages = stages.collect(Collectors.toList());
+		this();
+		stages.forEachOrdered(this::addStage);
 	}
 
 	public List<Stage> getStages() {
-		return new ArrayList<Stage>(stages);
+		return new ArrayList<Stage>(stages());
+	}
+	
+	/**
+	 * Gets the handles of the stages in the container.
+	 * @return A new list with the handles, in container order.
+	 */
+	public List<StageHandle> getHandles() {
+		List<StageHandle> result = new ArrayList<>(getNumberStages());
+		
+		for (StageHandle h: slots) {
+			if (h != null) {
+				result.add(h);
+			}
+		}
+		
+		return result;
 	}
 	
 	/**
@@ -57,31 +102,153 @@ public class Stages {
 	 * @return Number of stages in the container.
 	 */
 	public Integer getNumberStages() {
-		return this.stages.size();
+		return slots.size() - deleted;
+	}
+	
+	/**
+	 * Gets the number of threads used by the stream aggregations.
+	 * @return The parallelism of the container (1 if it works sequentially).
+	 */
+	public Integer getParallelism() {
+		return pool == null ? 1 : pool.getParallelism();
+	}
+	
+	/**
+	 * Sets the number of threads used by the stream aggregations (stagesByWinnerStream
+	 * and longestStagesByWinner).
+	 * With a parallelism greater than 1 the container gets its own ForkJoinPool, so the
+	 * aggregations do not compete with other users of the common pool. Their results
+	 * are the same as in sequential mode.
+	 * @param parallelism Number of threads, 1 to work sequentially.
+	 */
+	public void setParallelism(Integer parallelism) {
+		Checkers.check("Parallelism must be greater than 0.", parallelism > 0);
+		
+		if (pool != null) {
+			pool.shutdown();
+		}
+		pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+	}
+	
+	/**
+	 * Gets the minimum number of stages for an aggregation to run in parallel.
+	 * @return The parallel threshold.
+	 */
+	public Integer getParallelThreshold() {
+		return parallelThreshold;
+	}
+	
+	/**
+	 * Sets the minimum number of stages for an aggregation to run in parallel. Smaller
+	 * containers are aggregated sequentially, since splitting them costs more than it saves.
+	 * @param parallelThreshold The parallel threshold.
+	 */
+	public void setParallelThreshold(Integer parallelThreshold) {
+		Checkers.check("Parallel threshold must not be negative.", parallelThreshold >= 0);
+		this.parallelThreshold = parallelThreshold;
+	}
+	
+	/**
+	 * Enables the result cache of stagesBefore, longestStageWon and stagesByDistanceOfType,
+	 * keyed by query and arguments. When it is full, the least recently used result is
+	 * evicted. Adding or deleting a stage only invalidates the results that depend on it.
+	 * Cached lists are unmodifiable, since they are shared between callers.
+	 * @param capacity Maximum number of cached results.
+	 */
+	public void enableCache(Integer capacity) {
+		cache = new LruCache<>(capacity);
+	}
+	
+	/**
+	 * Disables the result cache and discards its results.
+	 */
+	public void disableCache() {
+		cache = null;
+	}
+	
+	/**
+	 * Gets the statistics of the result cache.
+	 * @return The hits, misses, evictions, invalidations and size of the cache, or null if it is disabled.
+	 */
+	public LruCache.Statistics getCacheStatistics() {
+		return cache == null ? null : cache.getStatistics();
 	}
 	
 	/**
 	 * Adds a stage to the container.
 	 * @param stage The stage to add.
+	 * @return The handle of the added stage.
 	 */
-	public void addStage(Stage stage) {
-		stages.add(stage);
+	public StageHandle addStage(Stage stage) {
+		StageHandle result = append(stage);
+		
+		invalidate(List.of(stage));
+		
+		return result;
 	}
 	
 	/**
 	 * Adds a collection of stages to the container.
 	 * @param stages Collection of stages to add.
+	 * @return The handles of the added stages, in the same order.
 	 */
-	public void addStages(Collection<Stage> stages) {
-		stages.addAll(stages);
+	public List<StageHandle> addStages(Collection<Stage> stages) {
+		List<StageHandle> result = new ArrayList<>(stages.size());
+		
+		for (Stage s: stages) {
+			result.add(append(s));
+		}
+		invalidate(stages);
+		
+		return result;
 	}
 	
 	/**
-	 * Deletes a stage from the container.
+	 * Deletes a stage from the container. The stage is found through the date index,
+	 * so only the stages of its date are compared with it.
 	 * @param stage The stage to delete.
 	 */
 	public void deleteStage(Stage stage) {
-		stages.remove(stage);
+		StageIndex.Entry entry = index.remove(stage);
+		
+		if (entry != null) {
+			discard(slots.get((int) entry.seq()));
+			invalidate(List.of(stage));
+		}
+	}
+	
+	/**
+	 * Deletes the stage of a handle from the container, without searching for it.
+	 * Nothing is done if the stage has already been deleted.
+	 * @param handle The handle returned when the stage was added.
+	 */
+	public void deleteStage(StageHandle handle) {
+		Checkers.check("The handle must belong to this container.", handle.owner() == this);
+		
+		if (!handle.isDeleted()) {
+			Stage stage = handle.getStage();
+			index.remove(handle.entry());
+			discard(handle);
+			invalidate(List.of(stage));
+		}
+	}
+	
+	/**
+	 * Replaces the stage of a handle with another one, without searching for it. The new
+	 * stage is placed at the end of the container, as if the old one had been deleted and
+	 * the new one added, and the handle refers to the new stage from then on.
+	 * @param handle The handle returned when the stage was added.
+	 * @param stage The new stage.
+	 */
+	public void replaceStage(StageHandle handle, Stage stage) {
+		Checkers.check("The handle must belong to this container.", handle.owner() == this);
+		Checkers.check("The stage of the handle must not have been deleted.", !handle.isDeleted());
+		
+		Stage old = handle.getStage();
+		index.remove(handle.entry());
+		discard(handle);
+		place(handle, stage);
+		invalidate(List.of(old, stage));
 	}
 	
 	/**
@@ -90,16 +257,63 @@ public class Stages {
 	 * @return true/false depending on whether there is a stage with a rider in the podium or not.
 	 */
 	public Boolean stageWithRiderInPodium(String riderName) {
-		Boolean result = false;
-		
-		for (Stage s: stages) {
-			if (s.podium().contains(riderName)) {
-				result = true;
-				break;
-			}
-		}
-		
-		return result;
+		return index.hasPodiumMember(riderName);
+	}
+	
+	/**
+	 * Gets the stages whose podium contains a certain rider.
+	 * @param riderName Name of the rider.
+	 * @return A list with the stages, in container order.
+	 */
+	public List<Stage> stagesWithRiderInPodium(String riderName) {
+		return index.stagesAt(index.podiumsOf(riderName));
+	}
+	
+	/**
+	 * Counts the stages whose podium contains a certain rider, without creating any list.
+	 * @param riderName Name of the rider.
+	 * @return The number of stages.
+	 */
+	public Integer countStagesWithRiderInPodium(String riderName) {
+		return index.podiumsOf(riderName).cardinality();
+	}
+	
+	/**
+	 * Gets the stages whose podium contains two riders.
+	 * @param riderName1 Name of the first rider.
+	 * @param riderName2 Name of the second rider.
+	 * @return A list with the stages, in container order.
+	 */
+	public List<Stage> stagesWithRidersInPodium(String riderName1, String riderName2) {
+		return index.stagesAt(index.podiumsOf(riderName1).and(index.podiumsOf(riderName2)));
+	}
+	
+	/**
+	 * Counts the stages whose podium contains two riders.
+	 * @param riderName1 Name of the first rider.
+	 * @param riderName2 Name of the second rider.
+	 * @return The number of stages.
+	 */
+	public Integer countStagesWithRidersInPodium(String riderName1, String riderName2) {
+		return index.podiumsOf(riderName1).and(index.podiumsOf(riderName2)).cardinality();
+	}
+	
+	/**
+	 * Gets the stages whose podium contains a rider that did not win them.
+	 * @param riderName Name of the rider.
+	 * @return A list with the stages, in container order.
+	 */
+	public List<Stage> podiumsWithoutWin(String riderName) {
+		return index.stagesAt(index.podiumsOf(riderName).andNot(index.winsOf(riderName)));
+	}
+	
+	/**
+	 * Counts the stages whose podium contains a rider that did not win them.
+	 * @param riderName Name of the rider.
+	 * @return The number of stages.
+	 */
+	public Integer countPodiumsWithoutWin(String riderName) {
+		return index.podiumsOf(riderName).andNot(index.winsOf(riderName)).cardinality();
 	}
 	
 	/**
@@ -107,14 +321,8 @@ public class Stages {
 	 * @return The average of the distances.
 	 */
 	public Float averageStageDistance() {
-		Checkers.check("Stage number must be greater than 0.", stages.size() > 0);
-		Float result = 0.0f;
-	
-		for (Stage s: stages) {
-			result += s.distance();
-		}
-		
-		return result / stages.size();
+		Checkers.check("Stage number must be greater than 0.", getNumberStages() > 0);
+		return aggregates.averageDistance();
 	}
 	
 	/**
@@ -123,34 +331,83 @@ public class Stages {
 	 * @return A list containing all the stages before that date.
 	 */
 	public List<Stage> stagesBefore(LocalDate date) {
-		List<Stage> result = new ArrayList<>();
-		
-		for (Stage s: stages) {
-			if (s.date().isBefore(date)) {
-				result.add(s);
-			}
-		}
-		
-		return result;
+		return cached(()->index.before(date), "stagesBefore", date);
 	}
 
+	/**
+	 * Gets a list with all stages that took place in a date range. Only the stages in
+	 * the range are visited.
+	 * @param from First date of the range (inclusive).
+	 * @param to End of the range (exclusive).
+	 * @return A list containing the stages in the range, in container order.
+	 */
+	public List<Stage> stagesBetween(LocalDate from, LocalDate to) {
+		return index.between(from, to);
+	}
+	
+	/**
+	 * Gets the aggregates (number of stages, total distance, stages by type and wins) of
+	 * the stages of a range of years. The container keeps the aggregates of every year,
+	 * so only one partition per year in the range is visited.
+	 * @param fromYear First year of the range.
+	 * @param toYear Last year of the range (inclusive).
+	 * @return The aggregates of the stages in those years.
+	 */
+	public StageStatistics statisticsBetween(Integer fromYear, Integer toYear) {
+		Checkers.check("The first year must not be after the last one.", fromYear <= toYear);
+		return aggregates.statistics(fromYear, toYear);
+	}
+	
+	/**
+	 * Gets the aggregates of the stages of every year.
+	 * @return A SortedMap associating every year with stages to its aggregates.
+	 */
+	public SortedMap<Integer, StageStatistics> statisticsByYear() {
+		return aggregates.statisticsByYear();
+	}
+	
+	/**
+	 * Gets the aggregates of the stages of every season, from the partitions of the
+	 * container, so it does not go through the stages or create a string per stage.
+	 * @return A SortedMap associating every season with stages to its aggregates.
+	 */
+	public SortedMap<Season, StageStatistics> statisticsBySeason() {
+		return aggregates.statisticsBySeason();
+	}
+	
+	/**
+	 * Counts the stages that took place before several dates at once.
+	 * @param dates The dates used for the filtering.
+	 * @return A map associating every date to the number of stages before it.
+	 */
+	public Map<LocalDate, Integer> countStagesBefore(Collection<LocalDate> dates) {
+		return index.countBefore(dates);
+	}
+	
+	/**
+	 * Starts a query that combines filters over the stages (podium members, winner,
+	 * type, distance range, date range and winner country) with an order, a limit and
+	 * an aggregation. The query reads the stages through the most selective index.
+	 * @return A new query without filters.
+	 */
+	public StageQuery query() {
+		return new StageQuery(this);
+	}
+	
+	/**
+	 * Gets the indexes of the container.
+	 * @return The current indexes.
+	 */
+	StageIndex index() {
+		return index;
+	}
+	
 	/**
 	 * Gets a map with all stages with the same number.
 	 * @return The created map.
 	 */
 	public Map<Integer, List<Stage>> stagesByNumber() {
-		Map<Integer, List<Stage>> result = new HashMap<>();
-		
-		for (Stage s: stages) {
-			if (result.containsKey(s.stageNo())) {
-				result.get(s.stageNo()).add(s);
-			} else {
-				result.put(s.stageNo(), new ArrayList<Stage>());
-				result.get(s.stageNo()).add(s);
-			}
-		}
-		
-		return result;
+		return index.byNumber();
 	}
 	
 	/**
@@ -158,17 +415,7 @@ public class Stages {
 	 * @return The created map.
 	 */
 	public Map<Rider, Integer> stagesByWinner() {
-		Map<Rider, Integer> result = new HashMap<>();
-		
-		for (Stage s: stages) {
-			if (result.containsKey(s.winner())) {
-				result.put(s.winner(), result.get(s.winner()) + 1);
-			} else {
-				result.put(s.winner(), 1);
-			}
-		}
-		
-		return result;
+		return aggregates.winCounts();
 	}
 	
 	/**
@@ -177,7 +424,7 @@ public class Stages {
 	 * @return true/false depending on whether there is a stage with a rider in the podium or not.
 	 */
 	public Boolean stageWithRiderInPodiumStream(String riderName) {
-		return stages.stream()
+		return stages().stream()
 				.anyMatch(stage->stage.podium().contains(riderName));
 	}
 	
@@ -186,7 +433,7 @@ public class Stages {
 	 * @return The average of the distances.
 	 */
 	public Double averageStageDistanceStream() {
-		return stages.stream()
+		return stages().stream()
 				.mapToDouble(stage->stage.distance())
 				.average()
 				.orElse(0.0);
@@ -198,7 +445,7 @@ public class Stages {
 	 * @return A list containing all the stages before that date.
 	 */
 	public List<Stage> stagesBeforeStream(LocalDate date) {
-		return stages.stream()
+		return stages().stream()
 				.filter(stage->stage.date().isBefore(date))
 				.toList();
 	}
@@ -209,10 +456,36 @@ public class Stages {
 	 * @return The longest stage with said rider as its winner.
 	 */
 	public Stage longestStageWon(String riderName) {
-		return stages.stream()
-				.filter(stage->stage.winner().name().equals(riderName))
+		return cached(()->index.wonBy(riderName).stream()
+				.map(StageIndex.Entry::stage)
 				.max(Comparator.comparing(stage->stage.distance()))
-				.orElse(null);
+				.orElse(null), "longestStageWon", riderName);
+	}
+	
+	/**
+	 * Gets the number of wins, the number of podiums and the longest stage won of several
+	 * riders at once. Every rider is answered from the indexes, so the cost depends on
+	 * the number of riders and their wins, not on the number of stages.
+	 * @param riderNames Names of the riders.
+	 * @return A map associating every name to the summary of the rider.
+	 */
+	public Map<String, RiderSummary> riderSummaries(Collection<String> riderNames) {
+		Map<String, RiderSummary> result = new HashMap<>();
+		
+		for (String name: riderNames) {
+			if (!result.containsKey(name)) {
+				List<StageIndex.Entry> won = index.wonBy(name);
+				Stage longest = null;
+				for (StageIndex.Entry e: won) {
+					if (longest == null || e.stage().distance() > longest.distance()) {
+						longest = e.stage();
+					}
+				}
+				result.put(name, new RiderSummary(name, won.size(), index.podiumsOf(name).cardinality(), longest));
+			}
+		}
+		
+		return result;
 	}
 	
 	/**
@@ -223,10 +496,27 @@ public class Stages {
 	 * @return The list of stages of that type, sorted by distance.
 	 */
 	public List<Stage> stagesByDistanceOfType(StageType type) {
-		return stages.stream()
-				.filter(stage->stage.type() == type)
-				.sorted(Comparator.comparing(stage->stage.distance()))
-				.toList();
+		return cached(()->index.ofType(type).stream()
+				.map(StageIndex.Entry::stage)
+				.toList(), "stagesByDistanceOfType", type);
+	}
+	
+	/**
+	 * Gets a page of the stages with the same type, sorted by distance.
+	 * @param type The stage type used for the filtering.
+	 * @param offset Number of stages to skip.
+	 * @param limit Maximum number of stages to return.
+	 * @return The stages of that type from position offset on, sorted by distance.
+	 */
+	public List<Stage> stagesByDistanceOfType(StageType type, Integer offset, Integer limit) {
+		Checkers.check("Offset must not be negative.", offset >= 0);
+		Checkers.check("Limit must not be negative.", limit >= 0);
+		
+		return cached(()->{
+			List<StageIndex.Entry> ofType = index.ofType(type);
+			int from = Math.min(offset, ofType.size());
+			return StageIndex.stagesOf(ofType.subList(from, (int) Math.min((long) from + limit, ofType.size())));
+		}, "stagesByDistanceOfType", type, offset, limit);
 	}
 	
 	/**
@@ -234,8 +524,7 @@ public class Stages {
 	 * @return The created map.
 	 */
 	public Map<Rider, Long> stagesByWinnerStream() {
-		return stages.stream()
-				.collect(Collectors.groupingBy(stage->stage.winner(), Collectors.counting()));
+		return aggregate(Collectors.groupingBy(stage->stage.winner(), Collectors.counting()));
 	}
 	
 	/**
@@ -244,10 +533,7 @@ public class Stages {
 	 * @return The created map.
 	 */
 	public Map<StageType, Set<String>> winnersByType() {
-		return stages.stream()
-				.collect(Collectors.groupingBy(
-						stage->stage.type(),
-						Collectors.mapping(stage->stage.winner().name(), Collectors.toSet())));
+		return aggregates.winnersByType();
 	}
 	
 	/**
@@ -255,47 +541,196 @@ public class Stages {
 	 * @return The created map.
 	 */
 	public Map<Rider, Stage> firstStageByRider() {
-		return stages.stream()
-				.collect(Collectors.groupingBy(
-						stage->stage.winner(),
-						Collectors.collectingAndThen(
-								Collectors.minBy(Comparator.comparing(stage->stage.date())),
-								x->x.orElse(null))));
+		return aggregates.firstStageByRider();
 	}
 	
 	/**
-	 * Gets a SortedMap with the n longest stages every stage winner has won.
+	 * Gets a SortedMap with the n longest stages every stage winner has won. Only the n
+	 * longest stages of every winner are kept while collecting, instead of sorting all of them.
 	 * @param n Number of stages to associate to each winner.
 	 * @return The created SortedMap.
 	 */
 	public SortedMap<String, List<Stage>> longestStagesByWinner(Integer n) {
-		return stages.stream()
-				.collect(Collectors.groupingBy(
+		return aggregate(Collectors.groupingBy(
 						stage->stage.winner().name(),
 						TreeMap::new,
-						Collectors.collectingAndThen(
-								Collectors.toList(),
-								list->list.stream()
-								.sorted(Comparator.comparing(Stage::distance).reversed())
-								.limit(n)
-								.toList())));
+						TopN.collector(n, Comparator.comparing(Stage::distance).reversed())));
 	}
 	
 	/**
-	 * Creates a map with all stage winners and their number of wins
-	 * and gets the one with the greatest number of wins.
-	 * @return The key of the map with its largest value of wins.
+	 * Gets the stage winner with the greatest number of wins.
+	 * @return The rider with most wins, or null if there are no stages.
 	 */
 	public Rider riderWithMostWins() {
-		Map<Rider, Long> map = stages.stream()
-				.collect(Collectors.groupingBy(
-						stage->stage.winner(),
-						Collectors.counting()));
+		return aggregates.riderWithMostWins();
+	}
+	
+	/**
+	 * Registers a stage at the end of the container.
+	 * @param stage The stage to add.
+	 * @return The handle of the stage.
+	 */
+	private StageHandle append(Stage stage) {
+		StageHandle result = new StageHandle(this, null);
+		
+		place(result, stage);
+		
+		return result;
+	}
+	
+	/**
+	 * Registers a stage at the end of the container under an existing handle.
+	 * @param handle The handle that will refer to the stage.
+	 * @param stage The stage to add.
+	 */
+	private void place(StageHandle handle, Stage stage) {
+		StageIndex.Entry entry = index.add(stage);
+		
+		aggregates.add(entry);
+		handle.setEntry(entry);
+		slots.add(handle);
+		if (stages != null) {
+			stages.add(stage);
+		}
+	}
+	
+	/**
+	 * Leaves a tombstone in the slot of a stage already removed from the index, and
+	 * compacts the container when tombstones outnumber the stages. Compacting only
+	 * happens after as many deletions as there are stages left and takes linear time,
+	 * so its cost per deletion is constant.
+	 * @param handle The handle of the stage.
+	 */
+	private void discard(StageHandle handle) {
+		aggregates.remove(handle.entry());
+		slots.set((int) handle.entry().seq(), null);
+		handle.setEntry(null);
+		deleted++;
+		stages = null;
+		
+		if (deleted > slots.size() - deleted) {
+			compact();
+		}
+	}
+	
+	/**
+	 * Removes the tombstones of the container. The index renumbers its entries in
+	 * place, keeping their order, so the aggregates and the handles are still valid.
+	 */
+	private void compact() {
+		List<StageHandle> live = new ArrayList<>(slots.size() - deleted);
+		
+		index.compact();
+		for (StageHandle h: slots) {
+			if (h != null) {
+				live.add(h);
+			}
+		}
+		slots = live;
+		deleted = 0;
+	}
+	
+	/**
+	 * Gets the stages in the container. After deletions, the list is rebuilt from the
+	 * slots the first time it is needed. Several threads may read a container that is
+	 * not being modified (see ConcurrentStages), so the rebuild is synchronized.
+	 * @return The stages, in container order. It must not be modified.
+	 */
+	private synchronized List<Stage> stages() {
+		if (stages == null) {
+			List<Stage> rebuilt = new ArrayList<>(getNumberStages());
+			for (StageHandle h: slots) {
+				if (h != null) {
+					rebuilt.add(h.getStage());
+				}
+			}
+			stages = rebuilt;
+		}
 		
-		return map.entrySet().stream()
-				.collect(Collectors.maxBy(Comparator.comparing(entry->entry.getValue())))
-				.orElse(null)
-				.getKey();
+		return stages;
+	}
+	
+	/**
+	 * Collects the stages with the given collector. Containers with at least parallelThreshold
+	 * stages are collected by a parallel stream in the pool of the container, whose partial
+	 * results are merged in encounter order, so the result is the same as a sequential one.
+	 * @param collector The collector to apply.
+	 * @return The result of the collector.
+	 */
+	private <R> R aggregate(Collector<Stage, ?, R> collector) {
+		R result;
+		
+		List<Stage> all = stages();
+		
+		if (pool == null || all.size() < parallelThreshold) {
+			result = all.stream().collect(collector);
+		} else {
+			result = pool.submit(()->all.parallelStream().collect(collector)).join();
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Runs a query through the result cache, if it is enabled.
+	 * @param query The query.
+	 * @param key Name of the query followed by its arguments.
+	 * @return The cached or computed result.
+	 */
+	@SuppressWarnings("unchecked")
+	private <R> R cached(Supplier<R> query, Object... key) {
+		R result;
+		
+		if (cache == null) {
+			result = query.get();
+		} else {
+			result = (R) cache.get(Arrays.asList(key), k->{
+				R value = query.get();
+				return value instanceof List<?> list ? Collections.unmodifiableList(list) : value;
+			});
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Removes from the result cache the results that may change when some stages are
+	 * added or deleted.
+	 * @param changed The added or deleted stages.
+	 */
+	private void invalidate(Collection<Stage> changed) {
+		if (cache != null && !changed.isEmpty()) {
+			LocalDate earliest = LocalDate.MAX;
+			Set<String> winners = new HashSet<>();
+			Set<StageType> types = EnumSet.noneOf(StageType.class);
+			
+			for (Stage s: changed) {
+				earliest = s.date().isBefore(earliest) ? s.date() : earliest;
+				winners.add(s.winner().name());
+				types.add(s.type());
+			}
+			
+			LocalDate first = earliest;
+			cache.invalidate(key->switch ((String) key.get(0)) {
+				case "stagesBefore" -> key.get(1) instanceof LocalDate date && first.isBefore(date);
+				case "longestStageWon" -> winners.contains(key.get(1));
+				default -> types.contains(key.get(1));
+			});
+		}
+	}
+	
+	/**
+	 * Writes the stages in the container to a compact binary snapshot, which can
+	 * be loaded again with StageFactory.readSnapshot much faster than the .csv file.
+	 * @param path File path of the snapshot.
+	 */
+	public void writeSnapshot(String path) {
+		try {
+			StageSnapshot.write(stages(), path);
+		} catch (IOException e) {
+			System.out.println("Error writing snapshot file.");
+			e.printStackTrace();
+		}
 	}
 	
 	public boolean equals(Object obj) {
@@ -308,10 +743,10 @@ public class Stages {
 		
 		Stages other = (Stages) obj;
 		
-		return Objects.equals(stages, other.stages);
+		return Objects.equals(stages(), other.stages());
 	}
 
 	public String toString() {
-		return "Stages [stages=" + stages + "]";
+		return "Stages [stages=" + stages() + "]";
 	}	
 }
@@ -0,0 +1,122 @@
+package fp.types.test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import fp.types.*;
+import fp.utils.Checkers;
+
+/**
+ * Class to test the ColumnarStages datatype against Stages.
+ * @author Guillermo R.N.
+ */
+public class ColumnarStagesTest {
+	/**
+	 * Tests the constructors and the materialization of stages.
+	 * @param stages Container with the stages to copy.
+	 * @return The newly created container.
+	 */
+	public static ColumnarStages constructorTest(Stages stages) {
+		System.out.println("-----------------");
+		System.out.println("Constructors Test");
+		System.out.println("-----------------\n");
+
+		ColumnarStages columnar = new ColumnarStages(stages);
+
+		System.out.println(columnar);
+		System.out.println("First register: " + columnar.getStage(0));
+		Checkers.check("Columnar stages should match the Stages object.",
+							columnar.toStages().equals(stages));
+		Checkers.check("Both constructors should create equal containers.",
+							columnar.equals(new ColumnarStages(stages.getStages())));
+		System.out.println();
+
+		return columnar;
+	}
+
+	/**
+	 * Tests the addStage and deleteStage methods.
+	 * @param stages Container with the stages to add and delete.
+	 */
+	public static void addDelTest(Stages stages) {
+		System.out.println("-----------------------");
+		System.out.println("Add / Delete Stage Test");
+		System.out.println("-----------------------\n");
+
+		ColumnarStages columnar = new ColumnarStages();
+		columnar.addStages(stages.getStages());
+
+		Checkers.check("Number of stages should match the Stages object.",
+							columnar.getNumberStages().equals(stages.getNumberStages()));
+
+		for (Stage s: stages.getStages())
+			columnar.deleteStage(s);
+
+		Checkers.check("Number of stages should be 0 after deleting every stage.",
+							columnar.getNumberStages() == 0);
+
+		System.out.println();
+	}
+
+	/**
+	 * Compares every query with the one in Stages.
+	 * @param stages Container used as reference.
+	 * @param columnar Container to test.
+	 */
+	public static void queriesTest(Stages stages, ColumnarStages columnar) {
+		System.out.println("------------");
+		System.out.println("Queries Test");
+		System.out.println("------------\n");
+
+		Checkers.check("stageWithRiderInPodium of ColumnarStages should match the one of Stages.",
+							columnar.stageWithRiderInPodium("Tom Steels").equals(stages.stageWithRiderInPodium("Tom Steels"))
+							&& columnar.stageWithRiderInPodium("John Doe").equals(stages.stageWithRiderInPodium("John Doe")));
+		Checkers.check("averageStageDistance of ColumnarStages should match the one of Stages.",
+							columnar.averageStageDistance().equals(stages.averageStageDistance()));
+		Checkers.check("stagesBefore of ColumnarStages should match the one of Stages.",
+							columnar.stagesBefore(LocalDate.of(2005, 7, 10)).equals(stages.stagesBefore(LocalDate.of(2005, 7, 10))));
+		Checkers.check("stagesByNumber of ColumnarStages should match the one of Stages.",
+							columnar.stagesByNumber().equals(stages.stagesByNumber()));
+		Checkers.check("stagesByWinner of ColumnarStages should match the one of Stages.",
+							columnar.stagesByWinner().equals(stages.stagesByWinner()));
+		Checkers.check("longestStageWon of ColumnarStages should match the one of Stages.",
+							columnar.longestStageWon("Mark Cavendish").equals(stages.longestStageWon("Mark Cavendish")));
+		Checkers.check("stagesByDistanceOfType of ColumnarStages should match the one of Stages.",
+							columnar.stagesByDistanceOfType(StageType.MOUNTAIN).equals(stages.stagesByDistanceOfType(StageType.MOUNTAIN)));
+		Checkers.check("Pages of stagesByDistanceOfType of ColumnarStages should match those of Stages.",
+							columnar.stagesByDistanceOfType(StageType.FLAT, 10, 5).equals(stages.stagesByDistanceOfType(StageType.FLAT, 10, 5))
+							&& columnar.stagesByDistanceOfType(StageType.FLAT, 1000, 5).equals(stages.stagesByDistanceOfType(StageType.FLAT, 1000, 5)));
+		Checkers.check("winnersByType of ColumnarStages should match the one of Stages.",
+							columnar.winnersByType().equals(stages.winnersByType()));
+		Checkers.check("firstStageByRider of ColumnarStages should match the one of Stages.",
+							columnar.firstStageByRider().equals(stages.firstStageByRider()));
+		Checkers.check("longestStagesByWinner of ColumnarStages should match the one of Stages.",
+							columnar.longestStagesByWinner(3).equals(stages.longestStagesByWinner(3))
+							&& columnar.longestStagesByWinner(0).equals(stages.longestStagesByWinner(0)));
+		Checkers.check("riderSummaries of ColumnarStages should match the one of Stages.",
+							columnar.riderSummaries(List.of("Mark Cavendish", "Peter Sagan", "John Doe"))
+							.equals(stages.riderSummaries(List.of("Mark Cavendish", "Peter Sagan", "John Doe"))));
+		Checkers.check("countStagesBefore of ColumnarStages should match the one of Stages.",
+							columnar.countStagesBefore(List.of(LocalDate.of(2005, 7, 10), LocalDate.of(1999, 1, 1), LocalDate.of(2030, 1, 1)))
+							.equals(stages.countStagesBefore(List.of(LocalDate.of(2005, 7, 10), LocalDate.of(1999, 1, 1), LocalDate.of(2030, 1, 1)))));
+		Checkers.check("riderWithMostWins of ColumnarStages should match the one of Stages.",
+							stages.stagesByWinner().get(columnar.riderWithMostWins())
+							.equals(stages.stagesByWinner().get(stages.riderWithMostWins())));
+
+		System.out.println();
+	}
+
+	public static void main(String[] args) {
+		System.out.println("-------------------");
+		System.out.println("ColumnarStages Test");
+		System.out.println("-------------------\n");
+
+		Stages stages = StageFactory.readStages("data/stages_TDF.csv");
+		ColumnarStages columnar = constructorTest(stages);
+
+		addDelTest(stages);
+		queriesTest(stages, columnar);
+
+		System.out.println("End of the ColumnarStages test.");
+	}
+}
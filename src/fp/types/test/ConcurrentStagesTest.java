@@ -0,0 +1,133 @@
+package fp.types.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fp.types.*;
+import fp.utils.Checkers;
+
+/**
+ * Class to test the ConcurrentStages datatype.
+ * @author Guillermo R.N.
+ */
+public class ConcurrentStagesTest {
+	/**
+	 * Tests the constructors, addStage, addStages and deleteStage.
+	 * @param stages Container with the stages to copy.
+	 */
+	public static void addDelTest(Stages stages) {
+		System.out.println("-----------------------");
+		System.out.println("Add / Delete Stage Test");
+		System.out.println("-----------------------\n");
+
+		ConcurrentStages concurrent = new ConcurrentStages(stages.getStages());
+
+		System.out.println(concurrent);
+		Checkers.check("Snapshot should match the Stages object.",
+							concurrent.getSnapshot().equals(stages));
+
+		concurrent = new ConcurrentStages();
+		for (Stage s: stages.getStages())
+			concurrent.addStage(s);
+
+		Checkers.check("Snapshot should match the Stages object when adding stages one by one.",
+							concurrent.getSnapshot().equals(stages));
+
+		// Querying after every deletion replays them one at a time on the queried Stages
+		for (Stage s: stages.getStages().subList(0, 100)) {
+			concurrent.deleteStage(s);
+			concurrent.query(Stages::getNumberStages);
+		}
+
+		Stages expected = new Stages(stages.getStages().subList(100, stages.getNumberStages()));
+		Checkers.check("Stages should match after deleting the first 100.",
+							concurrent.getStages().equals(expected.getStages()));
+		Checkers.check("Queries should match a new Stages object.",
+							concurrent.query(s->s.equals(expected)
+									&& s.stagesByWinner().equals(expected.stagesByWinner())
+									&& s.stagesByDistanceOfType(StageType.FLAT).equals(expected.stagesByDistanceOfType(StageType.FLAT))
+									&& s.firstStageByRider().equals(expected.firstStageByRider())));
+
+		for (Stage s: stages.getStages())
+			concurrent.deleteStage(s);
+
+		System.out.println(concurrent + "\n");
+	}
+
+	/**
+	 * Tests that queries are consistent while other threads add stages.
+	 * @param stages Container with the stages to add.
+	 */
+	public static void concurrencyTest(Stages stages) {
+		System.out.println("----------------");
+		System.out.println("Concurrency Test");
+		System.out.println("----------------\n");
+
+		ConcurrentStages concurrent = new ConcurrentStages();
+		List<Stage> batch = stages.getStages().subList(0, 7);
+		AtomicBoolean done = new AtomicBoolean(false);
+		AtomicBoolean consistent = new AtomicBoolean(true);
+		AtomicInteger queries = new AtomicInteger();
+		List<Thread> writers = new ArrayList<>();
+		List<Thread> readers = new ArrayList<>();
+
+		for (int i = 0; i < 4; i++) {
+			writers.add(new Thread(()->{
+				for (int j = 0; j < 500; j++)
+					concurrent.addStages(batch);
+			}));
+		}
+		for (int i = 0; i < 2; i++) {
+			readers.add(new Thread(()->{
+				while (!done.get()) {
+					// Batches are added atomically, so every snapshot holds whole batches
+					int size = concurrent.query(s->s.getNumberStages());
+					long wins = concurrent.query(s->s.stagesByWinner().values().stream()
+													.mapToLong(Integer::longValue).sum());
+					if (size % batch.size() != 0 || wins % batch.size() != 0) {
+						consistent.set(false);
+					}
+					queries.incrementAndGet();
+				}
+			}));
+		}
+
+		readers.forEach(Thread::start);
+		writers.forEach(Thread::start);
+		try {
+			for (Thread t: writers)
+				t.join();
+			done.set(true);
+			for (Thread t: readers)
+				t.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		Checkers.check("Every added stage should be in the container.",
+							concurrent.getNumberStages() == 4 * 500 * 7);
+		Checkers.check("Every batch should increase the version once.",
+							concurrent.getVersion() == 4 * 500);
+		Checkers.check("Queries should have run during the writes.",
+							queries.get() > 0);
+		Checkers.check("Every query should see whole batches.",
+							consistent.get());
+
+		System.out.println(concurrent + "\n");
+	}
+
+	public static void main(String[] args) {
+		System.out.println("---------------------");
+		System.out.println("ConcurrentStages Test");
+		System.out.println("---------------------\n");
+
+		Stages stages = StageFactory.readStages("data/stages_TDF.csv");
+
+		addDelTest(stages);
+		concurrencyTest(stages);
+
+		System.out.println("End of the ConcurrentStages test.");
+	}
+}
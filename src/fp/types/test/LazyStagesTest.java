@@ -0,0 +1,74 @@
+package fp.types.test;
+
+import java.time.LocalDate;
+
+import fp.types.*;
+import fp.utils.Checkers;
+
+/**
+ * Class to test the LazyStages datatype against Stages.
+ * @author Guillermo R.N.
+ */
+public class LazyStagesTest {
+	/**
+	 * Tests the loading of the file and the materialization of stages.
+	 * @param stages Container used as reference.
+	 * @return The newly created view.
+	 */
+	public static LazyStages loadTest(Stages stages) {
+		System.out.println("---------");
+		System.out.println("Load Test");
+		System.out.println("---------\n");
+
+		LazyStages lazy = StageFactory.readStagesLazy("data/stages_TDF.csv");
+
+		System.out.println(lazy);
+		Checkers.check("Number of stages should match the Stages object.",
+							lazy.getNumberStages().equals(stages.getNumberStages()));
+		System.out.println("First register: " + lazy.getStage(0));
+		Checkers.check("Lazy stages should match the Stages object.",
+							lazy.toStages().equals(stages));
+		System.out.println();
+
+		return lazy;
+	}
+
+	/**
+	 * Compares every query with the one in Stages.
+	 * @param stages Container used as reference.
+	 * @param lazy View to test.
+	 */
+	public static void queriesTest(Stages stages, LazyStages lazy) {
+		System.out.println("------------");
+		System.out.println("Queries Test");
+		System.out.println("------------\n");
+
+		Checkers.check("stageWithRiderInPodium of LazyStages should match the one of Stages.",
+							lazy.stageWithRiderInPodium("Tom Steels").equals(stages.stageWithRiderInPodium("Tom Steels"))
+							&& lazy.stageWithRiderInPodium("John Doe").equals(stages.stageWithRiderInPodium("John Doe")));
+		System.out.println(lazy);
+		Checkers.check("averageStageDistance of LazyStages should match the one of Stages.",
+							lazy.averageStageDistance().equals(stages.averageStageDistance()));
+		Checkers.check("stagesBefore of LazyStages should match the one of Stages.",
+							lazy.stagesBefore(LocalDate.of(2005, 7, 10)).equals(stages.stagesBefore(LocalDate.of(2005, 7, 10))));
+		Checkers.check("longestStageWon of LazyStages should match the one of Stages.",
+							lazy.longestStageWon("Mark Cavendish").equals(stages.longestStageWon("Mark Cavendish"))
+							&& lazy.longestStageWon("John Doe") == null);
+		Checkers.check("stagesByDistanceOfType of LazyStages should match the one of Stages.",
+							lazy.stagesByDistanceOfType(StageType.MOUNTAIN).equals(stages.stagesByDistanceOfType(StageType.MOUNTAIN)));
+		System.out.println(lazy + "\n");
+	}
+
+	public static void main(String[] args) {
+		System.out.println("---------------");
+		System.out.println("LazyStages Test");
+		System.out.println("---------------\n");
+
+		Stages stages = StageFactory.readStages("data/stages_TDF.csv");
+		LazyStages lazy = loadTest(stages);
+
+		queriesTest(stages, lazy);
+
+		System.out.println("End of the LazyStages test.");
+	}
+}
@@ -1,6 +1,19 @@
 package fp.types.test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
 import fp.types.*;
+import fp.utils.Checkers;
 
 /**
  * Class to test the StageFactory datatype.
@@ -55,6 +68,187 @@ public class StageFactoryTest {
 		System.out.println("No problems during parsing.\n");
 	}
 	
+	/**
+	 * Tests the streamStages method.
+	 * @param path Path of the .csv file to read.
+	 */
+	public static void streamStagesTest(String path) {
+		System.out.println("-----------------");
+		System.out.println("streamStages Test");
+		System.out.println("-----------------\n");
+		
+		try (Stream<Stage> stages = StageFactory.streamStages(path)) {
+			System.out.println("Average distance of the streamed stages: "
+								+ stages.mapToDouble(Stage::distance).average().orElse(0.0) + "\n");
+		}
+		
+		System.out.println("No problems during parsing.\n");
+	}
+	
+	/**
+	 * Tests the readStages method that hands stages to a consumer.
+	 * @param path Path of the .csv file to read.
+	 */
+	public static void readStagesConsumerTest(String path) {
+		System.out.println("------------------------");
+		System.out.println("readStages Consumer Test");
+		System.out.println("------------------------\n");
+		
+		Stages stages = new Stages();
+		StageFactory.readStages(path, stages::addStage);
+		
+		Checkers.check("The consumer should receive the same stages as readStages.",
+							stages.equals(StageFactory.readStages(path)));
+		
+		System.out.println("No problems during parsing.\n");
+	}
+	
+	/**
+	 * Tests the readStagesParallel method.
+	 * @param path Path of the .csv file to read.
+	 */
+	public static void readStagesParallelTest(String path) {
+		System.out.println("-----------------------");
+		System.out.println("readStagesParallel Test");
+		System.out.println("-----------------------\n");
+		
+		Stages stages = StageFactory.readStagesParallel(path);
+		
+		System.out.println("First register:");
+		System.out.println(stages.getStages().get(0) + "\n");
+		
+		Checkers.check("readStagesParallel should read the same stages, in the same order, as readStages.",
+							stages.equals(StageFactory.readStages(path)));
+		
+		System.out.println("No problems during parsing.\n");
+	}
+	
+	/**
+	 * Tests the readSnapshot method, using a snapshot written by Stages.writeSnapshot.
+	 * @param path Path of the .csv file to read.
+	 * @param snapshotPath Path of the snapshot to write and read.
+	 */
+	public static void readSnapshotTest(String path, String snapshotPath) {
+		System.out.println("-----------------");
+		System.out.println("readSnapshot Test");
+		System.out.println("-----------------\n");
+		
+		Stages stages = StageFactory.readStages(path);
+		stages.writeSnapshot(snapshotPath);
+		
+		Stages snapshot = StageFactory.readSnapshot(snapshotPath);
+		
+		System.out.println("First register:");
+		System.out.println(snapshot.getStages().get(0) + "\n");
+		
+		Checkers.check("Snapshot should hold the stages of the .csv file in the same order.",
+							snapshot.equals(stages));
+		
+		System.out.println("No problems during parsing.\n");
+	}
+	
+	/**
+	 * Tests that readSnapshot rejects corrupt snapshots instead of failing with
+	 * unexpected exceptions.
+	 * @param snapshotPath Path of a valid snapshot.
+	 * @param corruptPath Path of the corrupt copies to write and read.
+	 */
+	public static void readCorruptSnapshotTest(String snapshotPath, String corruptPath) {
+		System.out.println("------------------------");
+		System.out.println("readCorruptSnapshot Test");
+		System.out.println("------------------------\n");
+		
+		try {
+			byte[] valid = Files.readAllBytes(Paths.get(snapshotPath));
+			
+			// Number of StageType names (at offset 8) far beyond the size of the file
+			byte[] hugeLength = valid.clone();
+			hugeLength[8] = (byte) 0xFF;
+			hugeLength[9] = (byte) 0xFF;
+			hugeLength[10] = (byte) 0xFF;
+			hugeLength[11] = (byte) 0x7F;
+			// Unknown name for the first StageType (its first character is at offset 10)
+			byte[] unknownName = valid.clone();
+			unknownName[10] = 'x';
+			byte[] truncated = Arrays.copyOf(valid, valid.length / 2);
+			
+			for (byte[] corrupt: List.of(hugeLength, unknownName, truncated)) {
+				Files.write(Paths.get(corruptPath), corrupt);
+				Checkers.check("A corrupt snapshot should not be read.",
+								StageFactory.readSnapshot(corruptPath) == null);
+			}
+		} catch (IOException e) {
+			System.out.println("Error writing snapshot file.");
+			e.printStackTrace();
+		}
+		
+		System.out.println("Corrupt snapshots rejected.\n");
+	}
+	
+	/**
+	 * Tests the readStagesLenient method, using a copy of the .csv file with some
+	 * invalid lines.
+	 * @param path Path of the .csv file to read.
+	 * @param invalidPath Path of the copy with invalid lines to write and read.
+	 */
+	public static void readStagesLenientTest(String path, String invalidPath) {
+		System.out.println("----------------------");
+		System.out.println("readStagesLenient Test");
+		System.out.println("----------------------\n");
+		
+		try {
+			List<String> lines = new ArrayList<>(Files.readAllLines(Paths.get(path)));
+			lines.add(3, "1,2017-07-02,203.5,Duesseldorf,Liege,FLAT");
+			lines.add(5, "0,2017-07-03,212.5,Verviers,Longwy,FLAT,Peter Sagan,Bora,SVK,Peter Sagan; Michael Matthews; Dan Martin");
+			lines.add(7, "4,2017-07-04,-207.5,Mondorf-les-Bains,Vittel,FLAT,Arnaud Demare,FDJ,FRA,Arnaud Demare; Nacer Bouhanni; Alexander Kristoff");
+			lines.add(9, "5,2017-07-05,160.5,Vittel,La Planche des Belles Filles,HILLY,Fabio Aru,Astana,ITA,Fabio Aru; Daniel Martin; Chris Froome");
+			lines.add(11, "6,2017-07-06,216.0,Vesoul,Troyes,FLAT,Marcel Kittel,Quick-Step,GER,Marcel Kittel");
+			Files.write(Paths.get(invalidPath), lines);
+		} catch (IOException e) {
+			System.out.println("Error writing .csv file.");
+			e.printStackTrace();
+		}
+		
+		StageLoadReport report = StageFactory.readStagesLenient(invalidPath);
+		
+		System.out.println("Invalid lines:");
+		report.errors().forEach(System.out::println);
+		
+		Checkers.check("Lenient reading should only skip the invalid lines.",
+							report.stages().equals(StageFactory.readStages(path)));
+		Checkers.check("The valid .csv file should have no errors.",
+							!StageFactory.readStagesLenient(path).hasErrors());
+		
+		System.out.println();
+	}
+	
+	/**
+	 * Tests that the loaders share equal names between stages.
+	 * @param path Path of the .csv file to read.
+	 */
+	public static void internTest(String path) {
+		System.out.println("-----------");
+		System.out.println("Intern Test");
+		System.out.println("-----------\n");
+		
+		for (Stages stages: List.of(StageFactory.readStages(path), StageFactory.readStagesParallel(path))) {
+			Set<String> equal = new HashSet<>();
+			Set<String> identical = Collections.newSetFromMap(new IdentityHashMap<>());
+			
+			for (Stage s: stages.getStages()) {
+				equal.add(s.origin());
+				equal.add(s.destination());
+				identical.add(s.origin());
+				identical.add(s.destination());
+			}
+			
+			System.out.println("Distinct locations: " + equal.size()
+								+ ", distinct location objects: " + identical.size());
+		}
+		
+		System.out.println();
+	}
+	
 	public static void main(String[] args) {
 		System.out.println("-----------------");
 		System.out.println("StageFactory Test");
@@ -62,6 +256,16 @@ public class StageFactoryTest {
 		
 		readStagesTest("data/stages_TDF.csv");
 		readStagesToStreamTest("data/stages_TDF.csv");
+		streamStagesTest("data/stages_TDF.csv");
+		readStagesConsumerTest("data/stages_TDF.csv");
+		readStagesParallelTest("data/stages_TDF.csv");
+		internTest("data/stages_TDF.csv");
+		readSnapshotTest("data/stages_TDF.csv",
+				Paths.get(System.getProperty("java.io.tmpdir"), "stages_TDF.snapshot").toString());
+		readCorruptSnapshotTest(Paths.get(System.getProperty("java.io.tmpdir"), "stages_TDF.snapshot").toString(),
+				Paths.get(System.getProperty("java.io.tmpdir"), "stages_TDF_corrupt.snapshot").toString());
+		readStagesLenientTest("data/stages_TDF.csv",
+				Paths.get(System.getProperty("java.io.tmpdir"), "stages_TDF_invalid.csv").toString());
 		
 		System.out.println("End of the StageFactory test.");
 	}
@@ -0,0 +1,137 @@
+package fp.types.test;
+
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import fp.common.RiderCountry;
+import fp.types.*;
+import fp.utils.Checkers;
+
+/**
+ * Class to test the StageGenerator datatype.
+ * @author Guillermo R.N.
+ */
+public class StageGeneratorTest {
+	/**
+	 * Tests that the same seed always produces the same stages.
+	 */
+	public static void determinismTest() {
+		System.out.println("----------------");
+		System.out.println("Determinism Test");
+		System.out.println("----------------\n");
+
+		List<Stage> first = new StageGenerator(7).generate(1000).toList();
+		List<Stage> second = new StageGenerator(7).generate(1000).toList();
+		List<Stage> parallel = new StageGenerator(7).generate(1000).parallel().toList();
+		List<Stage> other = new StageGenerator(8).generate(1000).toList();
+
+		System.out.println("First register: " + first.get(0));
+		Checkers.check("The same seed should produce the same stages.",
+							first.equals(second));
+		Checkers.check("A parallel stream should produce the same stages.",
+							first.equals(parallel));
+		Checkers.check("Another seed should produce different stages.",
+							!first.equals(other));
+
+		System.out.println();
+	}
+
+	/**
+	 * Tests the configuration of the generator.
+	 */
+	public static void configurationTest() {
+		System.out.println("------------------");
+		System.out.println("Configuration Test");
+		System.out.println("------------------\n");
+
+		StageGenerator generator = new StageGenerator(1);
+		Map<StageType, Double> types = new EnumMap<>(StageType.class);
+		types.put(StageType.MOUNTAIN, 1.0);
+		Map<RiderCountry, Double> countries = new EnumMap<>(RiderCountry.class);
+		countries.put(RiderCountry.ESP, 3.0);
+		countries.put(RiderCountry.FRA, 1.0);
+
+		generator.setRiders(20);
+		generator.setTeams(4);
+		generator.setLocations(10);
+		generator.setSeasons(1990, 1995);
+		generator.setTypeWeights(types);
+		generator.setCountryWeights(countries);
+		System.out.println(generator);
+
+		Stages stages = new Stages(generator.generate(5000));
+
+		System.out.println("Stages by type: " + stages.getStages().stream()
+							.collect(Collectors.groupingBy(Stage::type, Collectors.counting())));
+		System.out.println("Winners by country: " + stages.getStages().stream()
+							.map(Stage::winner).distinct()
+							.collect(Collectors.groupingBy(r->r.country(), Collectors.counting())));
+		Checkers.check("There should be at most 20 winners.",
+							stages.stagesByWinner().size() <= 20);
+		System.out.println("Seasons: " + stages.getStages().stream()
+							.map(s->s.date().getYear()).collect(Collectors.toCollection(TreeSet::new)));
+		System.out.println("Rider with most wins: " + stages.riderWithMostWins() + "\n");
+	}
+
+	/**
+	 * Tests that a skew concentrating every win on a single rider still fills the podiums.
+	 */
+	public static void skewTest() {
+		System.out.println("---------");
+		System.out.println("Skew Test");
+		System.out.println("---------\n");
+
+		StageGenerator generator = new StageGenerator(3);
+		generator.setRiders(3);
+		generator.setWinnerSkew(100.0);
+
+		List<Stage> stages = generator.generate(1000).toList();
+		Checkers.check("Every stage should be won by the first rider with a skew of 100.",
+						stages.stream().map(Stage::winner).distinct().count() == 1);
+		Checkers.check("Every podium should have three different riders.",
+						stages.stream().allMatch(s->s.podium().stream().distinct().count() == 3));
+
+		System.out.println("First register: " + stages.get(0) + "\n");
+	}
+
+	/**
+	 * Tests that the generated files can be read by StageFactory.
+	 */
+	public static void writeTest() {
+		System.out.println("----------");
+		System.out.println("Write Test");
+		System.out.println("----------\n");
+
+		StageGenerator generator = new StageGenerator(42);
+		String csv = Paths.get(System.getProperty("java.io.tmpdir"), "stages_generated.csv").toString();
+		String snapshot = Paths.get(System.getProperty("java.io.tmpdir"), "stages_generated.snapshot").toString();
+		Stages generated = new Stages(generator.generate(10000));
+
+		generator.writeCsv(csv, 10000);
+		generator.writeSnapshot(snapshot, 10000);
+
+		Checkers.check("The .csv file should hold the generated stages.",
+							generated.equals(StageFactory.readStages(csv)));
+		Checkers.check("The snapshot should hold the generated stages.",
+							generated.equals(StageFactory.readSnapshot(snapshot)));
+
+		System.out.println();
+	}
+
+	public static void main(String[] args) {
+		System.out.println("-------------------");
+		System.out.println("StageGenerator Test");
+		System.out.println("-------------------\n");
+
+		determinismTest();
+		configurationTest();
+		skewTest();
+		writeTest();
+
+		System.out.println("End of the StageGenerator test.");
+	}
+}
@@ -3,11 +3,13 @@ package fp.types.test;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 import fp.common.Rider;
 import fp.common.RiderCountry;
 import fp.types.Stage;
 import fp.types.StageType;
+import fp.utils.Checkers;
 
 /**
  * Class to test the Stage datatype.
@@ -210,6 +212,35 @@ public class StageTest {
 		System.out.println("----------------------\n");
 	}
 	
+	/**
+	 * Fifth test scenario:
+	 * -Hash codes of a stage and its winner, compared with Objects.hash
+	 * -Sort keys of two stages of the same date
+	 */
+	public static void fifthTest() {
+		System.out.println("-------------------");
+		System.out.println("Fifth test scenario");
+		System.out.println("-------------------");
+		
+		Rider winner = new Rider("Marcel Kittel", "Quick-Step", RiderCountry.GER);
+		Stage a = new Stage(2, LocalDate.of(2017, 7, 2), 203.5f, "Dusseldorf", "Liege", StageType.FLAT,
+							List.of("Marcel Kittel", "Arnaud Demare", "Andre Greipel"), winner);
+		Stage b = new Stage(10, LocalDate.of(2017, 7, 2), 14.0f, "Liege", "Liege", StageType.TIME_TRIAL,
+							List.of("Marcel Kittel", "Arnaud Demare", "Andre Greipel"), winner);
+		
+		Checkers.check("Rider hash code should match Objects.hash.",
+							winner.hashCode() == Objects.hash(winner.country(), winner.name(), winner.team()));
+		Checkers.check("Stage hash code should match Objects.hash.",
+							a.hashCode() == Objects.hash(a.date(), a.destination(), a.distance(), a.origin(),
+															a.podium(), a.stageNo(), a.type(), a.winner()));
+		Checkers.check("Stage 2 should sort before stage 10.",
+							a.sortKey() < b.sortKey() && a.compareTo(b) < 0 && b.compareTo(a) > 0);
+		
+		System.out.println("---------------------");
+		System.out.println("End of the fifth test");
+		System.out.println("---------------------\n");
+	}
+	
 	public static void main(String[] args) {
 		System.out.println("----------");
 		System.out.println("Stage Test");
@@ -219,6 +250,7 @@ public class StageTest {
 		secondTest();
 		thirdTest();
 		fourthTest();
+		fifthTest();
 		
 		System.out.println("End of the Stage test.");
 	}
@@ -3,12 +3,21 @@ package fp.types.test;
 import java.time.LocalDate;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.stream.Collectors;
 
 import fp.common.Rider;
 import fp.common.RiderCountry;
+import fp.common.Season;
 import fp.types.*;
 import fp.utils.Checkers;
 
@@ -403,6 +412,440 @@ public class StagesTest {
 							+ "\n");
 	}
 	
+	/**
+	 * Tests that the indexed queries stay consistent with a full scan after
+	 * adding and deleting stages.
+	 * @param stages The container to analyze. It is restored before returning.
+	 */
+	public static void indexTest(Stages stages) {
+		System.out.println("----------");
+		System.out.println("Index Test");
+		System.out.println("----------\n");
+		
+		List<Stage> deleted = stages.getStages().subList(0, 50);
+		for (Stage s: deleted)
+			stages.deleteStage(s);
+		
+		Checkers.check("stagesBefore and stagesBeforeStream should be equal after deleting.",
+							stages.stagesBefore(LocalDate.of(2010, 1, 1))
+							.equals(stages.stagesBeforeStream(LocalDate.of(2010, 1, 1))));
+		Checkers.check("stageWithRiderInPodium and stageWithRiderInPodiumStream should be equal after deleting.",
+							stages.stageWithRiderInPodium("Geraint Thomas")
+							.equals(stages.stageWithRiderInPodiumStream("Geraint Thomas")));
+		
+		stages.addStages(deleted);
+		
+		Checkers.check("stagesByDistanceOfType should be sorted by distance after adding.",
+							stages.stagesByDistanceOfType(StageType.FLAT)
+							.equals(stages.getStages().stream()
+									.filter(s->s.type() == StageType.FLAT)
+									.sorted(Comparator.comparing(Stage::distance))
+									.toList()));
+		System.out.println("longestStageWon after adding: "
+							+ stages.longestStageWon("Geraint Thomas") + "\n");
+	}
+	
+	/**
+	 * Tests the podium queries against a scan of the podiums.
+	 * @param stages The container to analyze.
+	 */
+	public static void podiumTest(Stages stages) {
+		System.out.println("-----------");
+		System.out.println("Podium Test");
+		System.out.println("-----------\n");
+		
+		System.out.println("Stages with Alejandro Valverde in the podium: "
+							+ stages.countStagesWithRiderInPodium("Alejandro Valverde"));
+		System.out.println("Stages with Marcel Kittel and Peter Sagan in the podium: "
+							+ stages.stagesWithRidersInPodium("Marcel Kittel", "Peter Sagan").stream()
+							.map(s->s.origin() + " - " + s.destination()).toList());
+		System.out.println("Podiums of Peter Sagan without winning: "
+							+ stages.countPodiumsWithoutWin("Peter Sagan"));
+		System.out.println("Podiums of John Doe: " + stages.stagesWithRiderInPodium("John Doe"));
+		
+		// Few riders, so most chunks of the bitmaps are dense
+		StageGenerator generator = new StageGenerator(3);
+		generator.setRiders(12);
+		Stages generated = new Stages(generator.generate(200_000));
+		for (Stage s: generated.getStages().subList(0, 70_000))
+			generated.deleteStage(s);
+		
+		String rider1 = generated.getStages().get(0).podium().get(0);
+		String rider2 = generated.getStages().get(0).podium().get(1);
+		Checkers.check("Podium queries should return the same stages as a scan.",
+							generated.stagesWithRiderInPodium(rider1).equals(generated.getStages().stream()
+									.filter(s->s.podium().contains(rider1)).toList())
+							&& generated.stagesWithRidersInPodium(rider1, rider2).equals(generated.getStages().stream()
+									.filter(s->s.podium().contains(rider1) && s.podium().contains(rider2)).toList())
+							&& generated.podiumsWithoutWin(rider1).equals(generated.getStages().stream()
+									.filter(s->s.podium().contains(rider1) && !s.winner().name().equals(rider1)).toList()));
+		
+		Stage first = stages.getStages().get(0);
+		Stage repeated = new Stage(first.stageNo(), first.date(), first.distance(), first.origin(), first.destination(),
+									first.type(), List.of("John Doe", "John Doe", "Jane Doe"), first.winner());
+		Stages copy = new Stages(stages.getStages());
+		copy.addStage(repeated);
+		System.out.println("Podiums of John Doe with a repeated name: " + copy.countStagesWithRiderInPodium("John Doe"));
+		copy.deleteStage(repeated);
+		System.out.println("Podiums of John Doe after deleting it: " + copy.countStagesWithRiderInPodium("John Doe")
+							+ "\n");
+	}
+	
+	/**
+	 * Tests the batch queries against the single queries.
+	 * @param stages The container to analyze.
+	 */
+	public static void batchTest(Stages stages) {
+		System.out.println("----------");
+		System.out.println("Batch Test");
+		System.out.println("----------\n");
+		
+		List<String> riders = stages.getStages().stream()
+								.flatMap(s->s.podium().stream())
+								.distinct()
+								.toList();
+		Map<String, RiderSummary> summaries = stages.riderSummaries(riders);
+		
+		System.out.println("Summary of Mark Cavendish: " + summaries.get("Mark Cavendish"));
+		System.out.println("Summary of John Doe: " + stages.riderSummaries(List.of("John Doe")).get("John Doe"));
+		Checkers.check("Rider summaries should match the single queries.",
+							riders.stream().allMatch(r->summaries.get(r).inPodium().equals(stages.stageWithRiderInPodium(r))
+									&& Objects.equals(summaries.get(r).longestStageWon(), stages.longestStageWon(r))
+									&& summaries.get(r).wins() == stages.getStages().stream()
+									.filter(s->s.winner().name().equals(r)).count()));
+		
+		List<LocalDate> dates = List.of(LocalDate.of(2010, 7, 14), LocalDate.of(2000, 1, 1), LocalDate.of(2010, 7, 15));
+		Map<LocalDate, Integer> counts = stages.countStagesBefore(dates);
+		System.out.println("Stages before " + dates + ": " + dates.stream().map(counts::get).toList());
+		Checkers.check("Counts before every date should match stagesBefore.",
+							dates.stream().allMatch(d->counts.get(d) == stages.stagesBefore(d).size()));
+		
+		System.out.println();
+	}
+	
+	/**
+	 * Tests the date range query and the aggregates of every year.
+	 * @param stages The container to analyze. It is restored before returning.
+	 */
+	public static void partitionTest(Stages stages) {
+		System.out.println("--------------");
+		System.out.println("Partition Test");
+		System.out.println("--------------\n");
+		
+		LocalDate from = LocalDate.of(2005, 7, 10);
+		LocalDate to = LocalDate.of(2007, 7, 20);
+		Checkers.check("stagesBetween should return the stages in the range.",
+							stages.stagesBetween(from, to).equals(stages.getStages().stream()
+									.filter(s->!s.date().isBefore(from) && s.date().isBefore(to))
+									.toList()));
+		System.out.println("Empty range: " + stages.stagesBetween(to, from));
+		
+		SortedMap<Integer, StageStatistics> byYear = stages.statisticsByYear();
+		StageStatistics range = stages.statisticsBetween(2005, 2007);
+		System.out.println("Years: " + byYear.keySet());
+		System.out.println("Statistics of 2017: " + byYear.get(2017).numberStages() + " stages, "
+							+ byYear.get(2017).averageDistance() + " km on average, "
+							+ byYear.get(2017).stagesByType());
+		Checkers.check("Statistics of 2005-2007 should combine those of every year.",
+							range.equals(byYear.get(2005).combine(byYear.get(2006)).combine(byYear.get(2007))));
+		Checkers.check("Wins of 2005-2007 should match the stages between those years.",
+							range.wins().equals(new Stages(stages.stagesBetween(LocalDate.of(2005, 1, 1), LocalDate.of(2008, 1, 1)))
+									.stagesByWinner()));
+		
+		Stage first = stages.stagesBetween(LocalDate.of(2017, 1, 1), LocalDate.of(2018, 1, 1)).get(0);
+		stages.deleteStage(first);
+		System.out.println("Stages of 2017 after deleting one: " + stages.statisticsByYear().get(2017).numberStages());
+		stages.addStage(first);
+		Checkers.check("Statistics should be the same after deleting and adding a stage.",
+							byYear.equals(stages.statisticsByYear()));
+		System.out.println("Statistics of an empty range: " + stages.statisticsBetween(1950, 1960));
+		
+		SortedMap<Season, StageStatistics> bySeason = stages.statisticsBySeason();
+		System.out.println("Stages of season 2016-2017: " + bySeason.get(Season.of(2016)).numberStages());
+		Checkers.check("Stages per season should match a grouping by Stage.season.",
+							stages.getStages().stream()
+							.collect(Collectors.groupingBy(Stage::season, Collectors.counting()))
+							.entrySet().stream()
+							.allMatch(e->bySeason.get(e.getKey()).numberStages() == e.getValue().intValue()));
+		
+		System.out.println();
+	}
+	
+	/**
+	 * Tests the bounded ranking queries against a full sort.
+	 * @param stages The container to analyze.
+	 */
+	public static void topNTest(Stages stages) {
+		System.out.println("----------");
+		System.out.println("Top-N Test");
+		System.out.println("----------\n");
+		
+		List<Stage> mountain = stages.stagesByDistanceOfType(StageType.MOUNTAIN);
+		
+		System.out.println("Second page of 5 mountain stages: "
+							+ stages.stagesByDistanceOfType(StageType.MOUNTAIN, 5, 5).stream()
+							.map(Stage::distance).toList());
+		Checkers.check("Pages should be sublists of the sorted stages.",
+							stages.stagesByDistanceOfType(StageType.MOUNTAIN, 5, 5).equals(mountain.subList(5, 10))
+							&& stages.stagesByDistanceOfType(StageType.MOUNTAIN, mountain.size() - 2, 5)
+							.equals(mountain.subList(mountain.size() - 2, mountain.size()))
+							&& stages.stagesByDistanceOfType(StageType.MOUNTAIN, mountain.size() + 1, 5).isEmpty());
+		Checkers.check("longestStagesByWinner should match a full sort.",
+							stages.longestStagesByWinner(4).equals(stages.getStages().stream()
+									.collect(Collectors.groupingBy(s->s.winner().name(), TreeMap::new,
+											Collectors.collectingAndThen(Collectors.toList(),
+													list->list.stream()
+													.sorted(Comparator.comparing(Stage::distance).reversed())
+													.limit(4)
+													.toList())))));
+		
+		try {
+			stages.stagesByDistanceOfType(StageType.FLAT, -1, 5);
+		} catch (IllegalArgumentException e) {
+			System.out.println("Exception caught:\n   " + e + "\n");
+		}
+	}
+	
+	/**
+	 * Tests that the incrementally maintained aggregates match a recomputation from
+	 * scratch after adding and deleting stages.
+	 * @param stages The container to analyze. It is restored before returning.
+	 */
+	public static void aggregatesTest(Stages stages) {
+		System.out.println("---------------");
+		System.out.println("Aggregates Test");
+		System.out.println("---------------\n");
+		
+		Float average = stages.averageStageDistance();
+		List<Stage> deleted = stages.getStages().subList(100, 200);
+		for (Stage s: deleted)
+			stages.deleteStage(s);
+		
+		Stages rebuilt = new Stages(stages.getStages());
+		Checkers.check("stagesByWinner should match a rebuilt container.",
+							stages.stagesByWinner().equals(rebuilt.stagesByWinner()));
+		Checkers.check("stagesByWinner and stagesByWinnerStream should be equal after deleting.",
+							stages.stagesByWinner().entrySet().stream()
+							.allMatch(e->e.getValue().longValue() == stages.stagesByWinnerStream().get(e.getKey())));
+		System.out.println("winnersByType after deleting: " + stages.winnersByType().get(StageType.TIME_TRIAL));
+		Checkers.check("firstStageByRider should be the earliest stage won after deleting.",
+							stages.firstStageByRider().entrySet().stream()
+							.allMatch(e->e.getValue().equals(stages.getStages().stream()
+									.filter(s->s.winner().equals(e.getKey()))
+									.min(Comparator.comparing(Stage::date)).get())));
+		System.out.println("riderWithMostWins after deleting: " + stages.riderWithMostWins());
+		
+		stages.addStages(deleted);
+		Checkers.check("Average distance should be the same after adding the stages again.",
+							average.equals(stages.averageStageDistance()));
+		Checkers.check("winnersByType should match the stages after adding them again.",
+							stages.winnersByType().equals(stages.getStages().stream()
+									.collect(Collectors.groupingBy(Stage::type,
+											Collectors.mapping(s->s.winner().name(), Collectors.toSet())))));
+		
+		System.out.println();
+	}
+	
+	/**
+	 * Tests the result cache, its eviction and its invalidation.
+	 * @param stages The container to analyze. It is restored before returning.
+	 */
+	public static void cacheTest(Stages stages) {
+		System.out.println("----------");
+		System.out.println("Cache Test");
+		System.out.println("----------\n");
+		
+		stages.enableCache(2);
+		List<Stage> before = stages.stagesBefore(LocalDate.of(2003, 1, 1));
+		stages.stagesBefore(LocalDate.of(2003, 1, 1));
+		stages.longestStageWon("Mark Cavendish");
+		stages.longestStageWon("John Doe");
+		stages.longestStageWon("John Doe");
+		System.out.println("After 5 queries: " + stages.getCacheStatistics());
+		
+		stages.stagesByDistanceOfType(StageType.FLAT);
+		System.out.println("After evicting: " + stages.getCacheStatistics());
+		
+		Stage first = before.get(0);
+		stages.deleteStage(first);
+		Checkers.check("Cached stagesBefore should be updated after deleting.",
+							before.subList(1, before.size()).equals(stages.stagesBefore(LocalDate.of(2003, 1, 1))));
+		Checkers.check("Cached stagesByDistanceOfType should match the uncached result.",
+							stages.stagesByDistanceOfType(StageType.FLAT)
+							.equals(stages.getStages().stream()
+									.filter(s->s.type() == StageType.FLAT)
+									.sorted(Comparator.comparing(Stage::distance))
+									.toList()));
+		stages.addStage(first);
+		System.out.println("After adding and deleting: " + stages.getCacheStatistics());
+		
+		try {
+			before.clear();
+		} catch (UnsupportedOperationException e) {
+			System.out.println("Exception caught:\n   " + e);
+		}
+		
+		Checkers.check("Null arguments should be answered as without the cache.",
+							stages.longestStageWon(null) == null && stages.stagesByDistanceOfType(null).isEmpty());
+		stages.deleteStage(first);
+		stages.addStage(first);
+		Checkers.check("Null arguments should still be answered after adding and deleting.",
+							stages.longestStageWon(null) == null && stages.stagesByDistanceOfType(null).isEmpty());
+		
+		stages.disableCache();
+		System.out.println("Statistics after disabling the cache: " + stages.getCacheStatistics() + "\n");
+	}
+	
+	/**
+	 * Tests that the parallel mode gets the same results as the sequential one.
+	 * @param stages The container to analyze. It is sequential again before returning.
+	 */
+	public static void parallelTest(Stages stages) {
+		System.out.println("-------------");
+		System.out.println("Parallel Test");
+		System.out.println("-------------\n");
+		
+		Map<Rider, Long> byWinner = stages.stagesByWinnerStream();
+		Map<StageType, Set<String>> byType = stages.winnersByType();
+		Map<Rider, Stage> first = stages.firstStageByRider();
+		SortedMap<String, List<Stage>> longest = stages.longestStagesByWinner(3);
+		
+		stages.setParallelism(4);
+		stages.setParallelThreshold(0);
+		System.out.println("Parallelism: " + stages.getParallelism());
+		Checkers.check("stagesByWinnerStream should be the same in parallel mode.",
+							byWinner.equals(stages.stagesByWinnerStream()));
+		Checkers.check("winnersByType should be the same in parallel mode.",
+							byType.equals(stages.winnersByType()));
+		Checkers.check("firstStageByRider should be the same in parallel mode.",
+							first.equals(stages.firstStageByRider()));
+		Checkers.check("longestStagesByWinner should be the same in parallel mode.",
+							longest.equals(stages.longestStagesByWinner(3)));
+		Checkers.check("riderWithMostWins should have the most wins.",
+							byWinner.get(stages.riderWithMostWins()).equals(Collections.max(byWinner.values())));
+		
+		stages.setParallelism(1);
+		stages.setParallelThreshold(Stages.DEFAULT_PARALLEL_THRESHOLD);
+		System.out.println("Parallelism after resetting: " + stages.getParallelism() + "\n");
+	}
+	
+	/**
+	 * Tests deleting and replacing stages by handle, before and after the container
+	 * is compacted.
+	 * @param stages Container with the stages to copy.
+	 */
+	public static void handleTest(Stages stages) {
+		System.out.println("-----------");
+		System.out.println("Handle Test");
+		System.out.println("-----------\n");
+		
+		Stages copy = new Stages(stages.getStages());
+		List<StageHandle> handles = copy.getHandles();
+		List<Stage> expected = new ArrayList<>(stages.getStages());
+		
+		// A few deletions leave tombstones in the indexes without compacting them
+		for (int i = 0; i < 10; i++) {
+			copy.deleteStage(handles.get(i * 30 + 1));
+		}
+		Stages partial = new Stages(copy.getStages());
+		Checkers.check("Queries with tombstones should match a new container.",
+							copy.stagesBefore(LocalDate.of(2005, 7, 10)).equals(partial.stagesBefore(LocalDate.of(2005, 7, 10)))
+							&& copy.stagesByNumber().equals(partial.stagesByNumber())
+							&& copy.stagesByDistanceOfType(StageType.FLAT).equals(partial.stagesByDistanceOfType(StageType.FLAT))
+							&& copy.firstStageByRider().equals(partial.firstStageByRider()));
+		
+		// Deleting two thirds of the stages compacts the container on the way
+		for (int i = 0; i < handles.size(); i++) {
+			if (i % 3 != 0) {
+				copy.deleteStage(handles.get(i));
+				expected.remove(stages.getStages().get(i));
+			}
+		}
+		copy.deleteStage(handles.get(1));
+		System.out.println("Stages left: " + copy.getNumberStages());
+		Checkers.check("Deleting by handle should leave the same stages as deleting by value.",
+							copy.getStages().equals(expected));
+		
+		StageHandle handle = handles.get(3);
+		Stage old = handle.getStage();
+		Stage replacement = new Stage(old.stageNo(), old.date(), old.distance() + 1.0f, old.origin(),
+									old.destination(), old.type(), old.podium(), old.winner());
+		copy.replaceStage(handle, replacement);
+		expected.remove(old);
+		expected.add(replacement);
+		Checkers.check("The handle should refer to the replacement.",
+							handle.getStage() == replacement);
+		Checkers.check("A deleted handle should be marked as deleted.",
+							handles.get(1).isDeleted());
+		
+		Stages reference = new Stages(expected);
+		Checkers.check("Stages and queries should match a new container after replacing.",
+							copy.equals(reference)
+							&& copy.stagesByWinner().equals(reference.stagesByWinner())
+							&& copy.stagesByDistanceOfType(old.type()).equals(reference.stagesByDistanceOfType(old.type()))
+							&& copy.stagesByNumber().equals(reference.stagesByNumber())
+							&& copy.firstStageByRider().equals(reference.firstStageByRider())
+							&& copy.stagesWithRiderInPodium("Mark Cavendish").equals(reference.stagesWithRiderInPodium("Mark Cavendish"))
+							&& copy.statisticsByYear().equals(reference.statisticsByYear()));
+		
+		System.out.println();
+	}
+	
+	/**
+	 * Tests the query builder against the same filters applied with streams.
+	 * @param stages Container to query.
+	 */
+	public static void queryTest(Stages stages) {
+		System.out.println("----------");
+		System.out.println("Query Test");
+		System.out.println("----------\n");
+		
+		LocalDate from = LocalDate.of(2008, 1, 1);
+		LocalDate to = LocalDate.of(2013, 1, 1);
+		StageQuery query = stages.query()
+							.wonBy("Mark Cavendish")
+							.ofType(StageType.FLAT)
+							.between(from, to);
+		List<Stage> expected = stages.getStages().stream()
+								.filter(s->s.winner().name().equals("Mark Cavendish") && s.type() == StageType.FLAT
+										&& !s.date().isBefore(from) && s.date().isBefore(to))
+								.toList();
+		
+		System.out.println(query.explain() + "\n");
+		Checkers.check("The query should return the same stages as the stream.",
+							query.list().equals(expected));
+		Checkers.check("The query should count the same stages as the stream.",
+							query.count().equals(expected.size()));
+		
+		StageQuery longest = stages.query()
+							.withInPodium("Peter Sagan")
+							.winnerCountry(RiderCountry.SVK)
+							.orderBy(Comparator.comparing(Stage::distance).reversed())
+							.limit(3);
+		System.out.println("\n" + longest.explain() + "\n");
+		Checkers.check("The 3 longest stages should match the stream.",
+							longest.list().equals(stages.getStages().stream()
+							.filter(s->s.podium().contains("Peter Sagan") && s.winner().country() == RiderCountry.SVK)
+							.sorted(Comparator.comparing(Stage::distance).reversed())
+							.limit(3)
+							.toList()));
+		
+		StageQuery mountains = stages.query()
+							.ofType(StageType.MOUNTAIN)
+							.distanceBetween(150.0f, 200.0f);
+		System.out.println("\n" + mountains.explain() + "\n");
+		Checkers.check("Wins per country should match the stream.",
+							mountains.groupBy(s->s.winner().country(), Collectors.counting())
+							.equals(stages.getStages().stream()
+									.filter(s->s.type() == StageType.MOUNTAIN && s.distance() >= 150.0f && s.distance() <= 200.0f)
+									.collect(Collectors.groupingBy(s->s.winner().country(), Collectors.counting()))));
+		Checkers.check("The first 5 stages should match stagesBefore.",
+							stages.query().between(LocalDate.MIN, LocalDate.of(2005, 7, 10)).limit(5).list()
+							.equals(stages.stagesBefore(LocalDate.of(2005, 7, 10)).subList(0, 5)));
+		
+		System.out.println();
+	}
+	
 	public static void main(String[] args) {
 		System.out.println("-----------");
 		System.out.println("Stages Test");
@@ -437,6 +880,36 @@ public class StagesTest {
 		longestStagesByWinnerTest(stages4);
 		riderWithMostWinsTest(stages4);
 		
+		// Indexes
+		indexTest(stages4);
+		
+		// Podium bitmaps
+		podiumTest(stages4);
+		
+		// Batch queries
+		batchTest(stages4);
+		
+		// Partitions by year
+		partitionTest(stages4);
+		
+		// Bounded ranking queries
+		topNTest(stages4);
+		
+		// Incremental aggregates
+		aggregatesTest(stages4);
+		
+		// Result cache
+		cacheTest(stages4);
+		
+		// Parallel mode
+		parallelTest(stages4);
+		
+		// Stage handles
+		handleTest(stages4);
+		
+		// Query builder
+		queryTest(stages4);
+		
 		System.out.println("End of the Stages test.");
 	}
 }
@@ -5,6 +5,7 @@ package fp.utils;
  * Clase de utilidad con métodos para facilitar la gestión de restricciones.
  */
 public class Checkers {
+	private static final StackWalker PILA = StackWalker.getInstance();
 
 	/**
 	 * @param textoRestriccion
@@ -16,12 +17,7 @@ public class Checkers {
 	 */
 	public static void check(String textoRestriccion, Boolean condicion) {
 		if (!condicion) {
-			throw new IllegalArgumentException(
-					Thread.currentThread().getStackTrace()[2].getClassName() +
-					"." + 
-					Thread.currentThread().getStackTrace()[2].getMethodName() +
-					": " + 
-					textoRestriccion);
+			throw new IllegalArgumentException(llamador() + ": " + textoRestriccion);
 		}
 	}
 
@@ -32,12 +28,20 @@ public class Checkers {
 	public static void checkNoNull(Object... parametros) {
 		for (int i = 0; i < parametros.length; i++) {
 			if (parametros[i] == null) {
-				throw new IllegalArgumentException(
-						Thread.currentThread().getStackTrace()[2].getClassName() +
-						"." + 
-						Thread.currentThread().getStackTrace()[2].getMethodName() +
+				throw new IllegalArgumentException(llamador() +
 						": el parÃ¡metro " + (i + 1) + " es nulo");
 			}
 		}
 	}
+
+	/**
+	 * Obtiene el método que ha llamado al método de comprobación. Solo se recorren
+	 * los marcos necesarios de la pila, en lugar de capturar la traza completa.
+	 * @return Nombre de la clase y del método, separados por un punto.
+	 */
+	private static String llamador() {
+		return PILA.walk(marcos -> marcos.skip(2).findFirst())
+				.map(marco -> marco.getClassName() + "." + marco.getMethodName())
+				.orElse("");
+	}
 }
\ No newline at end of file
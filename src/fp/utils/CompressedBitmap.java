@@ -0,0 +1,429 @@
+package fp.utils;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative integers. The integers are split in chunks of 65536
+ * by their 16 high bits, and every chunk is stored as a sorted array of its 16 low bits
+ * while it is sparse (up to 4096 values) or as a 65536-bit bitmap when it is dense.
+ * A sparse set of positions takes about 2 bytes per value instead of one bit per
+ * possible position, and intersections and differences work chunk by chunk.
+ * @author Guillermo R.N.
+ */
+public class CompressedBitmap {
+	private static final int ARRAY_MAX = 4096;
+	private static final int WORDS = 1024;
+
+	/**
+	 * Chunk of 65536 values.
+	 */
+	private interface Container {
+		int cardinality();
+		boolean contains(char value);
+		Container add(char value);
+		Container remove(char value);
+		void forEach(int high, IntConsumer action);
+	}
+
+	/**
+	 * Sparse chunk: sorted array of low bits.
+	 */
+	private static class ArrayContainer implements Container {
+		private char[] values;
+		private int cardinality;
+
+		ArrayContainer(char[] values, int cardinality) {
+			this.values = values;
+			this.cardinality = cardinality;
+		}
+
+		public int cardinality() {
+			return cardinality;
+		}
+
+		public boolean contains(char value) {
+			return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+		}
+
+		public Container add(char value) {
+			Container result = this;
+			int position = Arrays.binarySearch(values, 0, cardinality, value);
+
+			if (position < 0) {
+				if (cardinality == ARRAY_MAX) {
+					result = toBitmap().add(value);
+				} else {
+					position = -position - 1;
+					if (cardinality == values.length) {
+						values = Arrays.copyOf(values, Math.min(ARRAY_MAX, Math.max(4, cardinality * 2)));
+					}
+					System.arraycopy(values, position, values, position + 1, cardinality - position);
+					values[position] = value;
+					cardinality++;
+				}
+			}
+
+			return result;
+		}
+
+		public Container remove(char value) {
+			int position = Arrays.binarySearch(values, 0, cardinality, value);
+
+			if (position >= 0) {
+				System.arraycopy(values, position + 1, values, position, cardinality - position - 1);
+				cardinality--;
+			}
+
+			return this;
+		}
+
+		public void forEach(int high, IntConsumer action) {
+			for (int i = 0; i < cardinality; i++) {
+				action.accept(high | values[i]);
+			}
+		}
+
+		BitmapContainer toBitmap() {
+			long[] words = new long[WORDS];
+
+			for (int i = 0; i < cardinality; i++) {
+				words[values[i] >>> 6] |= 1L << values[i];
+			}
+
+			return new BitmapContainer(words, cardinality);
+		}
+	}
+
+	/**
+	 * Dense chunk: one bit per value.
+	 */
+	private static class BitmapContainer implements Container {
+		private long[] words;
+		private int cardinality;
+
+		BitmapContainer(long[] words, int cardinality) {
+			this.words = words;
+			this.cardinality = cardinality;
+		}
+
+		public int cardinality() {
+			return cardinality;
+		}
+
+		public boolean contains(char value) {
+			return (words[value >>> 6] & (1L << value)) != 0;
+		}
+
+		public Container add(char value) {
+			if (!contains(value)) {
+				words[value >>> 6] |= 1L << value;
+				cardinality++;
+			}
+			return this;
+		}
+
+		public Container remove(char value) {
+			Container result = this;
+
+			if (contains(value)) {
+				words[value >>> 6] &= ~(1L << value);
+				cardinality--;
+				if (cardinality <= ARRAY_MAX / 2) {
+					result = toArray();
+				}
+			}
+
+			return result;
+		}
+
+		public void forEach(int high, IntConsumer action) {
+			for (int w = 0; w < WORDS; w++) {
+				long word = words[w];
+				while (word != 0) {
+					action.accept(high | (w << 6) | Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+		}
+
+		ArrayContainer toArray() {
+			char[] values = new char[cardinality];
+			int[] n = {0};
+
+			forEach(0, v->values[n[0]++] = (char) v);
+
+			return new ArrayContainer(values, cardinality);
+		}
+	}
+
+	private int[] keys;
+	private Container[] containers;
+	private int size;
+
+	/**
+	 * Constructor. Creates an empty bitmap.
+	 */
+	public CompressedBitmap() {
+		this.keys = new int[4];
+		this.containers = new Container[4];
+		this.size = 0;
+	}
+
+	/**
+	 * Adds a value to the set.
+	 * @param value The value, not negative.
+	 */
+	public void add(int value) {
+		Checkers.check("Value must not be negative.", value >= 0);
+		int position = find(value >>> 16);
+
+		if (position < 0) {
+			position = -position - 1;
+			insert(position, value >>> 16, new ArrayContainer(new char[4], 0));
+		}
+		containers[position] = containers[position].add((char) value);
+	}
+
+	/**
+	 * Removes a value from the set.
+	 * @param value The value.
+	 */
+	public void remove(int value) {
+		int position = value < 0 ? -1 : find(value >>> 16);
+
+		if (position >= 0) {
+			containers[position] = containers[position].remove((char) value);
+			if (containers[position].cardinality() == 0) {
+				System.arraycopy(keys, position + 1, keys, position, size - position - 1);
+				System.arraycopy(containers, position + 1, containers, position, size - position - 1);
+				size--;
+				containers[size] = null;
+			}
+		}
+	}
+
+	/**
+	 * Checks if a value is in the set.
+	 * @param value The value.
+	 * @return true/false depending on whether the value is in the set or not.
+	 */
+	public boolean contains(int value) {
+		int position = value < 0 ? -1 : find(value >>> 16);
+		return position >= 0 && containers[position].contains((char) value);
+	}
+
+	/**
+	 * Checks if the set is empty.
+	 * @return true if there are no values in the set.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Gets the number of values in the set.
+	 * @return The cardinality of the set.
+	 */
+	public int cardinality() {
+		int result = 0;
+
+		for (int i = 0; i < size; i++) {
+			result += containers[i].cardinality();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Runs an action for every value in the set, in ascending order.
+	 * @param action The action.
+	 */
+	public void forEach(IntConsumer action) {
+		for (int i = 0; i < size; i++) {
+			containers[i].forEach(keys[i] << 16, action);
+		}
+	}
+
+	/**
+	 * Intersects two sets.
+	 * @param other The other set.
+	 * @return A new set with the values in both sets.
+	 */
+	public CompressedBitmap and(CompressedBitmap other) {
+		CompressedBitmap result = new CompressedBitmap();
+		int i = 0;
+		int j = 0;
+
+		while (i < size && j < other.size) {
+			if (keys[i] < other.keys[j]) {
+				i++;
+			} else if (keys[i] > other.keys[j]) {
+				j++;
+			} else {
+				result.append(keys[i], and(containers[i], other.containers[j]));
+				i++;
+				j++;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Subtracts a set from this one.
+	 * @param other The set to subtract.
+	 * @return A new set with the values in this set that are not in the other one.
+	 */
+	public CompressedBitmap andNot(CompressedBitmap other) {
+		CompressedBitmap result = new CompressedBitmap();
+		int j = 0;
+
+		for (int i = 0; i < size; i++) {
+			while (j < other.size && other.keys[j] < keys[i]) {
+				j++;
+			}
+			if (j < other.size && other.keys[j] == keys[i]) {
+				result.append(keys[i], andNot(containers[i], other.containers[j]));
+			} else {
+				result.append(keys[i], copy(containers[i]));
+			}
+		}
+
+		return result;
+	}
+
+	private static Container and(Container a, Container b) {
+		Container result;
+
+		if (a instanceof BitmapContainer x && b instanceof BitmapContainer y) {
+			long[] words = new long[WORDS];
+			int cardinality = 0;
+			for (int w = 0; w < WORDS; w++) {
+				words[w] = x.words[w] & y.words[w];
+				cardinality += Long.bitCount(words[w]);
+			}
+			BitmapContainer bitmap = new BitmapContainer(words, cardinality);
+			result = cardinality <= ARRAY_MAX ? bitmap.toArray() : bitmap;
+		} else {
+			// At least one side is sparse: test its values against the other side
+			ArrayContainer sparse = (ArrayContainer) (a instanceof ArrayContainer ? a : b);
+			Container other = sparse == a ? b : a;
+			char[] values = new char[sparse.cardinality];
+			int cardinality = 0;
+			for (int k = 0; k < sparse.cardinality; k++) {
+				if (other.contains(sparse.values[k])) {
+					values[cardinality++] = sparse.values[k];
+				}
+			}
+			result = new ArrayContainer(values, cardinality);
+		}
+
+		return result;
+	}
+
+	private static Container andNot(Container a, Container b) {
+		Container result;
+
+		if (a instanceof BitmapContainer x) {
+			long[] words = Arrays.copyOf(x.words, WORDS);
+			if (b instanceof BitmapContainer y) {
+				for (int w = 0; w < WORDS; w++) {
+					words[w] &= ~y.words[w];
+				}
+			} else {
+				ArrayContainer y = (ArrayContainer) b;
+				for (int k = 0; k < y.cardinality; k++) {
+					words[y.values[k] >>> 6] &= ~(1L << y.values[k]);
+				}
+			}
+			int cardinality = 0;
+			for (long word: words) {
+				cardinality += Long.bitCount(word);
+			}
+			BitmapContainer bitmap = new BitmapContainer(words, cardinality);
+			result = cardinality <= ARRAY_MAX ? bitmap.toArray() : bitmap;
+		} else {
+			ArrayContainer x = (ArrayContainer) a;
+			char[] values = new char[x.cardinality];
+			int cardinality = 0;
+			for (int k = 0; k < x.cardinality; k++) {
+				if (!b.contains(x.values[k])) {
+					values[cardinality++] = x.values[k];
+				}
+			}
+			result = new ArrayContainer(values, cardinality);
+		}
+
+		return result;
+	}
+
+	private static Container copy(Container c) {
+		Container result;
+
+		if (c instanceof BitmapContainer b) {
+			result = new BitmapContainer(b.words.clone(), b.cardinality);
+		} else {
+			ArrayContainer a = (ArrayContainer) c;
+			result = new ArrayContainer(Arrays.copyOf(a.values, a.cardinality), a.cardinality);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Adds a chunk after the last one, unless it is empty.
+	 */
+	private void append(int key, Container container) {
+		if (container.cardinality() > 0) {
+			insert(size, key, container);
+		}
+	}
+
+	private void insert(int position, int key, Container container) {
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			containers = Arrays.copyOf(containers, size * 2);
+		}
+		System.arraycopy(keys, position, keys, position + 1, size - position);
+		System.arraycopy(containers, position, containers, position + 1, size - position);
+		keys[position] = key;
+		containers[position] = container;
+		size++;
+	}
+
+	private int find(int key) {
+		return Arrays.binarySearch(keys, 0, size, key);
+	}
+
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+
+		CompressedBitmap other = (CompressedBitmap) obj;
+		boolean result = size == other.size && Arrays.equals(keys, 0, size, other.keys, 0, size);
+
+		for (int i = 0; result && i < size; i++) {
+			result = containers[i].cardinality() == other.containers[i].cardinality()
+					&& andNot(containers[i], other.containers[i]).cardinality() == 0;
+		}
+
+		return result;
+	}
+
+	public int hashCode() {
+		int[] result = {cardinality()};
+
+		forEach(v->result[0] = 31 * result[0] + v);
+
+		return result[0];
+	}
+
+	public String toString() {
+		return "CompressedBitmap [cardinality=" + cardinality() + ", chunks=" + size + "]";
+	}
+}
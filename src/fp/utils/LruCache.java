@@ -0,0 +1,124 @@
+package fp.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Cache with a maximum number of entries that evicts the least recently used one when
+ * it is full. It records its number of hits, misses, evictions and invalidations.
+ * Null values are cached as well. It is not thread-safe.
+ * @author Guillermo R.N.
+ */
+public class LruCache<K, V> {
+	/**
+	 * Statistics of a cache.
+	 * @param hits Number of lookups that found their entry.
+	 * @param misses Number of lookups that had to compute their entry.
+	 * @param evictions Number of entries evicted to make room for new ones.
+	 * @param invalidations Number of entries removed by invalidate or clear.
+	 * @param size Number of entries in the cache.
+	 */
+	public record Statistics(long hits, long misses, long evictions, long invalidations, int size) {
+		/**
+		 * Gets the ratio of lookups that found their entry (derived property).
+		 * @return The hit rate, or 0 if there were no lookups.
+		 */
+		public Double hitRate() {
+			return hits + misses == 0 ? 0.0 : (double) hits / (hits + misses);
+		}
+	}
+
+	private int capacity;
+	private Map<K, V> entries;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long invalidations;
+
+	/**
+	 * Constructor.
+	 * @param capacity Maximum number of entries.
+	 */
+	public LruCache(int capacity) {
+		Checkers.check("Capacity must be greater than 0.", capacity > 0);
+		this.capacity = capacity;
+		// Access order: iteration starts with the least recently used entry
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				boolean result = size() > LruCache.this.capacity;
+				if (result) {
+					evictions++;
+				}
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * Gets the value of a key, computing and caching it if it is not in the cache.
+	 * @param key The key.
+	 * @param compute Function that computes the value of a key.
+	 * @return The cached or computed value.
+	 */
+	public V get(K key, Function<? super K, ? extends V> compute) {
+		V result = entries.get(key);
+
+		if (result != null || entries.containsKey(key)) {
+			hits++;
+		} else {
+			misses++;
+			result = compute.apply(key);
+			entries.put(key, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Removes the entries whose key fulfils a condition.
+	 * @param condition The condition.
+	 */
+	public void invalidate(Predicate<? super K> condition) {
+		Iterator<K> keys = entries.keySet().iterator();
+
+		while (keys.hasNext()) {
+			if (condition.test(keys.next())) {
+				keys.remove();
+				invalidations++;
+			}
+		}
+	}
+
+	/**
+	 * Removes every entry.
+	 */
+	public void clear() {
+		invalidations += entries.size();
+		entries.clear();
+	}
+
+	/**
+	 * Gets the maximum number of entries.
+	 * @return The capacity of the cache.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Gets the statistics of the cache.
+	 * @return The current statistics.
+	 */
+	public Statistics getStatistics() {
+		return new Statistics(hits, misses, evictions, invalidations, entries.size());
+	}
+
+	public String toString() {
+		return "LruCache [capacity=" + capacity + ", " + getStatistics() + "]";
+	}
+}
@@ -0,0 +1,82 @@
+package fp.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary that assigns consecutive integer identifiers (0, 1, 2...) to strings.
+ * Every distinct string is stored only once, so it can also be used to share
+ * equal strings between objects.
+ * @author Guillermo R.N.
+ */
+public class StringDictionary {
+	private Map<String, Integer> ids;
+	private List<String> strings;
+
+	/**
+	 * First constructor. Creates an empty dictionary.
+	 */
+	public StringDictionary() {
+		this.ids = new HashMap<>();
+		this.strings = new ArrayList<>();
+	}
+
+	/**
+	 * Gets the identifier of a string, adding it to the dictionary if it was not there.
+	 * @param s The string whose identifier to get.
+	 * @return The identifier of the string.
+	 */
+	public int idOf(String s) {
+		Integer result = ids.get(s);
+
+		if (result == null) {
+			result = strings.size();
+			ids.put(s, result);
+			strings.add(s);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets the identifier of a string without adding it to the dictionary.
+	 * @param s The string whose identifier to get.
+	 * @return The identifier of the string, or -1 if it is not in the dictionary.
+	 */
+	public int find(String s) {
+		Integer result = ids.get(s);
+		return result == null ? -1 : result;
+	}
+
+	/**
+	 * Gets the canonical copy of a string, adding it to the dictionary if it was not there.
+	 * @param s The string to look up.
+	 * @return The string stored in the dictionary that is equal to s.
+	 */
+	public String intern(String s) {
+		return strings.get(idOf(s));
+	}
+
+	/**
+	 * Gets the string with a certain identifier.
+	 * @param id The identifier of the string.
+	 * @return The string with that identifier.
+	 */
+	public String get(int id) {
+		return strings.get(id);
+	}
+
+	/**
+	 * Gets the number of strings in the dictionary.
+	 * @return The number of strings.
+	 */
+	public int size() {
+		return strings.size();
+	}
+
+	public String toString() {
+		return "StringDictionary [size=" + strings.size() + "]";
+	}
+}
@@ -0,0 +1,105 @@
+package fp.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Collector;
+
+/**
+ * Bounded selection of the first elements of a stream in a given order. Keeps at most
+ * n elements in a heap, so selecting them takes O(m log n) time and O(n) memory
+ * instead of sorting all the m elements.
+ * @author Guillermo R.N.
+ */
+public class TopN<T> {
+	/**
+	 * Element of the heap with its position in the stream, used to break ties.
+	 */
+	private record Ranked<T>(T element, long position) {
+	}
+
+	private int n;
+	private Comparator<? super T> order;
+	private PriorityQueue<Ranked<T>> heap;
+	private long seen;
+
+	/**
+	 * Constructor.
+	 * @param n Maximum number of elements to keep.
+	 * @param order Order of the elements; the first n in this order are kept.
+	 */
+	public TopN(int n, Comparator<? super T> order) {
+		Checkers.check("Number of elements must not be negative.", n >= 0);
+		Comparator<Ranked<T>> ranking = Comparator.comparing(Ranked::element, order);
+		this.n = n;
+		this.order = order;
+		// The root of the heap is the last kept element: the first one to discard
+		this.heap = new PriorityQueue<>(Math.max(1, Math.min(n, 1024)),
+				ranking.thenComparingLong(Ranked::position).reversed());
+		this.seen = 0;
+	}
+
+	/**
+	 * Gets a collector with the same result as sorted(order).limit(n).toList(), ties
+	 * included, that keeps at most n elements per accumulator. It can be used in
+	 * parallel streams.
+	 * @param n Maximum number of elements to keep.
+	 * @param order Order of the elements.
+	 * @return The collector.
+	 */
+	public static <T> Collector<T, ?, List<T>> collector(int n, Comparator<? super T> order) {
+		return Collector.of(()->new TopN<T>(n, order), TopN::add, TopN::merge, TopN::toList);
+	}
+
+	/**
+	 * Offers an element. It is kept if it is among the first n elements seen so far.
+	 * @param element The element.
+	 */
+	public void add(T element) {
+		offer(element, seen++);
+	}
+
+	/**
+	 * Adds the elements of another selection, which came after the elements of this one.
+	 * @param other The other selection.
+	 * @return This selection.
+	 */
+	public TopN<T> merge(TopN<T> other) {
+		for (Ranked<T> r: other.heap) {
+			offer(r.element(), seen + r.position());
+		}
+		seen += other.seen;
+
+		return this;
+	}
+
+	/**
+	 * Gets the kept elements.
+	 * @return A new list with at most n elements, in order (ties in the order they were added).
+	 */
+	public List<T> toList() {
+		List<Ranked<T>> ranked = new ArrayList<>(heap);
+		ranked.sort(heap.comparator().reversed());
+
+		List<T> result = new ArrayList<>(ranked.size());
+		for (Ranked<T> r: ranked) {
+			result.add(r.element());
+		}
+
+		return result;
+	}
+
+	private void offer(T element, long position) {
+		if (heap.size() < n) {
+			heap.add(new Ranked<>(element, position));
+		} else if (n > 0 && order.compare(element, heap.peek().element()) < 0) {
+			heap.poll();
+			heap.add(new Ranked<>(element, position));
+		}
+	}
+
+	public String toString() {
+		return "TopN [n=" + n + ", kept=" + heap.size() + ", seen=" + seen + "]";
+	}
+}